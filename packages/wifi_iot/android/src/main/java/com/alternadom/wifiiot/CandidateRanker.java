@@ -0,0 +1,212 @@
+package com.alternadom.wifiiot;
+
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ranks the scanned BSSIDs of several candidate networks for {@code findAndConnectBest}. The score
+ * of a BSSID is its level in dBm, plus a bonus for the 5 and 6 GHz bands and for WPA3 or OWE,
+ * minus a penalty for each connect failure within the failure memory. Enterprise networks, and
+ * BSSIDs below the minimum level, are left out since connecting to them would fail anyway.
+ *
+ * <p>The failure history is kept across calls.
+ */
+class CandidateRanker {
+  /// A network to look for, by exact SSID or by SSID prefix
+  static final class Candidate {
+    final String ssid;
+    final boolean prefix;
+    final String password;
+
+    Candidate(String ssid, boolean prefix, String password) {
+      this.ssid = ssid;
+      this.prefix = prefix;
+      this.password = password;
+    }
+  }
+
+  /// A scanned BSSID of a candidate, with its score
+  static final class Ranked {
+    final Candidate candidate;
+    final ScanIndex.Entry entry;
+    final int score;
+
+    Ranked(Candidate candidate, ScanIndex.Entry entry, int score) {
+      this.candidate = candidate;
+      this.entry = entry;
+      this.score = score;
+    }
+  }
+
+  static final class Policy {
+    int minLevel = -90;
+    /// dB added to BSSIDs on 5 or 6 GHz
+    int bandBonus = 10;
+    /// dB added to WPA3 and OWE BSSIDs
+    int securityBonus = 0;
+    /// dB removed per remembered connect failure
+    int failurePenalty = 20;
+    /// Milliseconds a connect failure is remembered
+    long failureMemory = 5 * 60 * 1000;
+    /// Maximum number of BSSIDs tried
+    int maxAttempts = 3;
+
+    /**
+     * Parses the {@code policy} call argument, which can be null.
+     *
+     * @throws IllegalArgumentException if a value is not an int
+     */
+    static Policy fromArguments(Object policy) {
+      final Policy parsed = new Policy();
+      if (policy == null) {
+        return parsed;
+      }
+      if (!(policy instanceof Map)) {
+        throw new IllegalArgumentException("policy must be a map");
+      }
+      final Map<?, ?> spec = (Map<?, ?>) policy;
+      parsed.minLevel = intOf(spec, "minLevel", parsed.minLevel);
+      parsed.bandBonus = intOf(spec, "bandBonus", parsed.bandBonus);
+      parsed.securityBonus = intOf(spec, "securityBonus", parsed.securityBonus);
+      parsed.failurePenalty = intOf(spec, "failurePenalty", parsed.failurePenalty);
+      parsed.failureMemory = intOf(spec, "failureMemory", (int) parsed.failureMemory);
+      parsed.maxAttempts = Math.max(1, intOf(spec, "maxAttempts", parsed.maxAttempts));
+      return parsed;
+    }
+
+    private static int intOf(Map<?, ?> spec, String key, int defaultValue) {
+      final Object value = spec.get(key);
+      if (value == null) {
+        return defaultValue;
+      }
+      if (!(value instanceof Integer)) {
+        throw new IllegalArgumentException(key + " must be an int");
+      }
+      return (Integer) value;
+    }
+  }
+
+  private static final Comparator<Ranked> BEST_FIRST =
+      new Comparator<Ranked>() {
+        @Override
+        public int compare(Ranked a, Ranked b) {
+          return b.score < a.score ? -1 : (b.score == a.score ? 0 : 1);
+        }
+      };
+
+  /// Failures remembered per BSSID, older ones are forgotten first
+  private static final int MAX_FAILURES_PER_BSSID = 8;
+
+  /// Upper case BSSID to the elapsedRealtime() of its recent connect failures
+  private final HashMap<String, List<Long>> failures = new HashMap<>();
+
+  /**
+   * Parses the {@code candidates} call argument, a list of maps with {@code ssid}, {@code prefix}
+   * and {@code password}.
+   *
+   * @throws IllegalArgumentException if it is not such a list or an SSID is missing
+   */
+  static List<Candidate> candidatesFromArguments(Object candidates) {
+    if (!(candidates instanceof List)) {
+      throw new IllegalArgumentException("candidates must be a list");
+    }
+    final List<Candidate> parsed = new ArrayList<>();
+    for (Object candidate : (List<?>) candidates) {
+      if (!(candidate instanceof Map)) {
+        throw new IllegalArgumentException("candidates must be maps");
+      }
+      final Map<?, ?> spec = (Map<?, ?>) candidate;
+      final Object ssid = spec.get("ssid");
+      if (ssid == null || ssid.toString().isEmpty()) {
+        throw new IllegalArgumentException("candidate ssid is missing");
+      }
+      final Object password = spec.get("password");
+      parsed.add(
+          new Candidate(
+              ssid.toString(),
+              Boolean.TRUE.equals(spec.get("prefix")),
+              password != null ? password.toString() : null));
+    }
+    return parsed;
+  }
+
+  /// Every scanned BSSID of the candidates, best first, each BSSID once
+  synchronized List<Ranked> rank(ScanIndex index, List<Candidate> candidates, Policy policy) {
+    final long now = SystemClock.elapsedRealtime();
+    final List<Ranked> ranked = new ArrayList<>();
+    final Set<String> seen = new HashSet<>();
+    for (Candidate candidate : candidates) {
+      final List<ScanIndex.Entry> entries =
+          candidate.prefix ? index.getWithPrefix(candidate.ssid) : index.get(candidate.ssid);
+      for (ScanIndex.Entry entry : entries) {
+        if (entry.level < policy.minLevel
+            || (entry.capabilityFlags & WifiCapabilities.EAP) != 0
+            || (entry.bssid != null && !seen.add(entry.bssid.toUpperCase()))) {
+          continue;
+        }
+        ranked.add(new Ranked(candidate, entry, score(entry, policy, now)));
+      }
+    }
+    Collections.sort(ranked, BEST_FIRST);
+    return ranked;
+  }
+
+  private int score(ScanIndex.Entry entry, Policy policy, long now) {
+    int score = entry.level;
+    if ((ScanResultFilter.bandOf(entry.frequency)
+            & (ScanResultFilter.BAND_5_GHZ | ScanResultFilter.BAND_6_GHZ))
+        != 0) {
+      score += policy.bandBonus;
+    }
+    final int flags = entry.capabilityFlags;
+    if ((flags & (WifiCapabilities.SAE | WifiCapabilities.OWE)) != 0) {
+      score += policy.securityBonus;
+    }
+    score -= policy.failurePenalty * recentFailures(entry.bssid, policy.failureMemory, now);
+    return score;
+  }
+
+  private int recentFailures(String bssid, long memory, long now) {
+    final List<Long> times = bssid != null ? failures.get(bssid.toUpperCase()) : null;
+    if (times == null) {
+      return 0;
+    }
+    int count = 0;
+    for (long time : times) {
+      if (now - time <= memory) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  synchronized void recordFailure(String bssid) {
+    if (bssid == null) {
+      return;
+    }
+    final String key = bssid.toUpperCase();
+    List<Long> times = failures.get(key);
+    if (times == null) {
+      times = new ArrayList<>(1);
+      failures.put(key, times);
+    }
+    if (times.size() == MAX_FAILURES_PER_BSSID) {
+      times.remove(0);
+    }
+    times.add(SystemClock.elapsedRealtime());
+  }
+
+  /// Forgets the failures of [bssid], which just connected
+  synchronized void recordSuccess(String bssid) {
+    if (bssid != null) {
+      failures.remove(bssid.toUpperCase());
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package com.alternadom.wifiiot;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Index of {@link WifiManager#getConfiguredNetworks()} by quoted SSID, plus a trie over the quoted
+ * SSIDs for prefix lookups, built on first use. It is rebuilt after the configured networks
+ * changed, either through this index or as reported by the system broadcast.
+ */
+class ConfiguredNetworkIndex {
+  /// WifiManager.CONFIGURED_NETWORKS_CHANGED_ACTION, a system API
+  private static final String CONFIGURED_NETWORKS_CHANGED_ACTION =
+      "android.net.wifi.CONFIGURED_NETWORKS_CHANGE";
+
+  /// Trie node, remembering the first configuration (in system order) whose
+  /// SSID goes through it
+  private static class Node {
+    final HashMap<Character, Node> children = new HashMap<>();
+    int first = Integer.MAX_VALUE;
+  }
+
+  private final WifiManager wifiManager;
+  private boolean stale = true;
+  private List<WifiConfiguration> configurations = Collections.emptyList();
+  private final HashMap<String, List<WifiConfiguration>> bySsid = new HashMap<>();
+  private Node root = new Node();
+
+  private final BroadcastReceiver receiver =
+      new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+          invalidate();
+        }
+      };
+
+  ConfiguredNetworkIndex(WifiManager wifiManager) {
+    this.wifiManager = wifiManager;
+  }
+
+  void register(Context context) {
+    context.registerReceiver(receiver, new IntentFilter(CONFIGURED_NETWORKS_CHANGED_ACTION));
+  }
+
+  void unregister(Context context) {
+    context.unregisterReceiver(receiver);
+  }
+
+  synchronized void invalidate() {
+    stale = true;
+  }
+
+  /// Configurations whose SSID is exactly [quotedSsid], in system order
+  synchronized List<WifiConfiguration> get(String quotedSsid) {
+    ensureFresh();
+    final List<WifiConfiguration> matches = bySsid.get(quotedSsid);
+    return matches != null ? matches : Collections.<WifiConfiguration>emptyList();
+  }
+
+  synchronized boolean contains(String quotedSsid) {
+    ensureFresh();
+    return bySsid.containsKey(quotedSsid);
+  }
+
+  /// First configuration, in system order, whose quoted SSID starts with
+  /// [quotedPrefix], or null
+  synchronized WifiConfiguration firstWithPrefix(String quotedPrefix) {
+    ensureFresh();
+    Node node = root;
+    for (int i = 0; i < quotedPrefix.length() && node != null; i++) {
+      node = node.children.get(quotedPrefix.charAt(i));
+    }
+    return node != null && node.first != Integer.MAX_VALUE ? configurations.get(node.first) : null;
+  }
+
+  /// Removes every configuration whose SSID is one of [quotedSsids], saving
+  /// the configuration once. Returns the number of networks removed.
+  synchronized int removeAll(Collection<String> quotedSsids) {
+    ensureFresh();
+    final Set<Integer> networkIds = new LinkedHashSet<>();
+    for (String quotedSsid : quotedSsids) {
+      final List<WifiConfiguration> matches = bySsid.get(quotedSsid);
+      if (matches != null) {
+        for (WifiConfiguration configuration : matches) {
+          networkIds.add(configuration.networkId);
+        }
+      }
+    }
+    return removeNetworks(networkIds);
+  }
+
+  /// Removes, for each of [quotedPrefixes], the first configuration whose
+  /// quoted SSID starts with it, saving the configuration once. Returns
+  /// whether a configuration was removed for each prefix; prefixes that
+  /// resolve to the same configuration share its outcome.
+  synchronized boolean[] removeFirstWithPrefixes(List<String> quotedPrefixes) {
+    ensureFresh();
+    final int[] networkIds = new int[quotedPrefixes.size()];
+    final Set<Integer> pending = new LinkedHashSet<>();
+    for (int i = 0; i < networkIds.length; i++) {
+      final WifiConfiguration configuration = firstWithPrefix(quotedPrefixes.get(i));
+      networkIds[i] = configuration != null ? configuration.networkId : -1;
+      if (configuration != null) {
+        pending.add(configuration.networkId);
+      }
+    }
+    final Set<Integer> removed = new HashSet<>();
+    for (int networkId : pending) {
+      if (wifiManager.removeNetwork(networkId)) {
+        removed.add(networkId);
+      }
+    }
+    if (!pending.isEmpty()) {
+      wifiManager.saveConfiguration();
+      stale = true;
+    }
+    final boolean[] results = new boolean[networkIds.length];
+    for (int i = 0; i < networkIds.length; i++) {
+      results[i] = removed.contains(networkIds[i]);
+    }
+    return results;
+  }
+
+  synchronized boolean remove(WifiConfiguration configuration) {
+    return removeNetworks(Collections.singleton(configuration.networkId)) > 0;
+  }
+
+  private int removeNetworks(Collection<Integer> networkIds) {
+    if (networkIds.isEmpty()) {
+      return 0;
+    }
+    int removed = 0;
+    for (int networkId : networkIds) {
+      if (wifiManager.removeNetwork(networkId)) {
+        removed++;
+      }
+    }
+    wifiManager.saveConfiguration();
+    stale = true;
+    return removed;
+  }
+
+  private void ensureFresh() {
+    if (!stale) {
+      return;
+    }
+    final List<WifiConfiguration> list = wifiManager.getConfiguredNetworks();
+    configurations = list != null ? list : new ArrayList<WifiConfiguration>();
+    bySsid.clear();
+    root = new Node();
+    for (int position = 0; position < configurations.size(); position++) {
+      final String ssid = configurations.get(position).SSID;
+      if (ssid == null) {
+        continue;
+      }
+      List<WifiConfiguration> matches = bySsid.get(ssid);
+      if (matches == null) {
+        matches = new ArrayList<>(1);
+        bySsid.put(ssid, matches);
+      }
+      matches.add(configurations.get(position));
+
+      Node node = root;
+      for (int i = 0; i < ssid.length(); i++) {
+        Node child = node.children.get(ssid.charAt(i));
+        if (child == null) {
+          child = new Node();
+          node.children.put(ssid.charAt(i), child);
+        }
+        node = child;
+        node.first = Math.min(node.first, position);
+      }
+    }
+    stale = false;
+  }
+}
@@ -0,0 +1,35 @@
+package com.alternadom.wifiiot;
+
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.os.SystemClock;
+
+/**
+ * Last {@link WifiInfo} read from {@link WifiManager#getConnectionInfo()}, so that reads within a
+ * short window share one binder call.
+ */
+class ConnectionInfoCache {
+  private final WifiManager wifiManager;
+  private WifiInfo info;
+  private long readAt;
+
+  ConnectionInfoCache(WifiManager wifiManager) {
+    this.wifiManager = wifiManager;
+  }
+
+  /// Returns the cached info if it is younger than [window] milliseconds,
+  /// otherwise reads it again. A window of 0 always reads it again.
+  synchronized WifiInfo get(long window) {
+    final long now = SystemClock.elapsedRealtime();
+    if (info == null || window <= 0 || now - readAt >= window) {
+      info = wifiManager.getConnectionInfo();
+      readAt = now;
+    }
+    return info;
+  }
+
+  /// Age in milliseconds of the info returned by the last [get]
+  synchronized long getAge() {
+    return SystemClock.elapsedRealtime() - readAt;
+  }
+}
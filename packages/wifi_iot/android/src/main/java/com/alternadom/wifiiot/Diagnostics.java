@@ -0,0 +1,139 @@
+package com.alternadom.wifiiot;
+
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plugin wide diagnostics. Log statements on hot paths are guarded by {@link #isLoggable(int)}, so
+ * their messages are not even built unless the level is enabled. Connect attempts can additionally
+ * be recorded as structured events into a fixed size ring buffer, which is disabled by default and
+ * can be fetched from Dart instead of reading logcat.
+ */
+final class Diagnostics {
+  static final String TAG = WifiIotPlugin.class.getSimpleName();
+
+  /// Level disabling every log statement
+  static final int OFF = Log.ASSERT + 1;
+
+  static final int DEFAULT_LEVEL = Log.INFO;
+
+  private static volatile int level = DEFAULT_LEVEL;
+
+  /// Recorded events, parallel arrays used as a ring buffer starting at [head]
+  private static final Object lock = new Object();
+  private static volatile int capacity = 0;
+  private static long[] times = new long[0];
+  private static String[] types = new String[0];
+  private static String[] ssids = new String[0];
+  private static String[] bssids = new String[0];
+  private static String[] details = new String[0];
+  private static int head = 0;
+  private static int count = 0;
+
+  private Diagnostics() {}
+
+  /**
+   * @param priority one of the {@link Log} priorities
+   * @return whether messages of this priority are logged
+   */
+  static boolean isLoggable(int priority) {
+    return priority >= level;
+  }
+
+  /**
+   * @param level minimum {@link Log} priority that is logged, {@link #OFF} to log nothing
+   */
+  static void setLevel(int level) {
+    Diagnostics.level = Math.max(Log.VERBOSE, Math.min(level, OFF));
+  }
+
+  static int getLevel() {
+    return level;
+  }
+
+  /** @return whether connect events are recorded, callers can skip building their details */
+  static boolean isRecording() {
+    return capacity > 0;
+  }
+
+  /**
+   * Resizes the event buffer, dropping the events recorded so far.
+   *
+   * @param capacity maximum number of events kept, the oldest ones are overwritten first, 0
+   *     disables recording
+   */
+  static void setEventCapacity(int capacity) {
+    capacity = Math.max(0, capacity);
+    synchronized (lock) {
+      times = new long[capacity];
+      types = new String[capacity];
+      ssids = new String[capacity];
+      bssids = new String[capacity];
+      details = new String[capacity];
+      head = 0;
+      count = 0;
+      Diagnostics.capacity = capacity;
+    }
+  }
+
+  /**
+   * Records a connect event, if recording is enabled.
+   *
+   * @param type short event name, e.g. {@code "start"} or {@code "available"}
+   * @param detail free form details, may be null
+   */
+  static void event(String type, String ssid, String bssid, String detail) {
+    if (capacity == 0) {
+      return;
+    }
+    final long time = System.currentTimeMillis();
+    synchronized (lock) {
+      final int size = times.length;
+      if (size == 0) {
+        return;
+      }
+      final int slot = (head + count) % size;
+      times[slot] = time;
+      types[slot] = type;
+      ssids[slot] = ssid;
+      bssids[slot] = bssid;
+      details[slot] = detail;
+      if (count < size) {
+        count++;
+      } else {
+        head = (head + 1) % size;
+      }
+    }
+  }
+
+  /**
+   * @param clear whether to remove the returned events from the buffer
+   * @return the recorded events, oldest first
+   */
+  static List<Map<String, Object>> getEvents(boolean clear) {
+    synchronized (lock) {
+      final List<Map<String, Object>> events = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        final int slot = (head + i) % times.length;
+        final Map<String, Object> event = new HashMap<>();
+        event.put("time", times[slot]);
+        event.put("type", types[slot]);
+        event.put("ssid", ssids[slot]);
+        event.put("bssid", bssids[slot]);
+        event.put("detail", details[slot]);
+        events.add(event);
+      }
+      if (clear) {
+        for (int i = 0; i < times.length; i++) {
+          types[i] = ssids[i] = bssids[i] = details[i] = null;
+        }
+        head = 0;
+        count = 0;
+      }
+      return events;
+    }
+  }
+}
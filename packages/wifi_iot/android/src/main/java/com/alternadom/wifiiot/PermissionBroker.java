@@ -0,0 +1,126 @@
+package com.alternadom.wifiiot;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Runtime permission requests of the plugin. Calls waiting for the same permission share one
+ * system prompt and are resumed, or failed, together when it is answered. Prompts for different
+ * permissions are shown one after the other, since an activity can only show one at a time.
+ *
+ * <p>Must be used from the main thread.
+ */
+@TargetApi(Build.VERSION_CODES.M)
+class PermissionBroker {
+  static final int REQUEST_CODE = 65655435;
+
+  interface Callback {
+    void onGranted();
+
+    void onDenied();
+  }
+
+  /// Callbacks by permission, waiting or prompted
+  private final HashMap<String, List<Callback>> pending = new HashMap<>();
+  /// Permissions waiting for their prompt, in request order
+  private final ArrayDeque<String> queue = new ArrayDeque<>();
+  private String prompted;
+  private Activity activity;
+
+  void setActivity(Activity activity) {
+    this.activity = activity;
+    if (activity == null && prompted != null) {
+      // the answer of a prompt shown by a destroyed activity never arrives,
+      // prompt again from the next one
+      queue.addFirst(prompted);
+      prompted = null;
+    }
+    promptNext();
+  }
+
+  void request(String permission, Callback callback) {
+    List<Callback> callbacks = pending.get(permission);
+    if (callbacks != null) {
+      callbacks.add(callback);
+      return;
+    }
+    callbacks = new ArrayList<>();
+    callbacks.add(callback);
+    pending.put(permission, callbacks);
+    queue.add(permission);
+    promptNext();
+  }
+
+  boolean onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+    if (requestCode != REQUEST_CODE || prompted == null) {
+      return false;
+    }
+    final boolean granted =
+        grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED;
+    final List<Callback> callbacks = pending.remove(prompted);
+    prompted = null;
+    if (callbacks != null) {
+      for (Callback callback : callbacks) {
+        if (granted) {
+          callback.onGranted();
+        } else {
+          callback.onDenied();
+        }
+      }
+    }
+    promptNext();
+    return true;
+  }
+
+  /// Drops [callback], which no longer wants the answer. A prompt already
+  /// shown is left alone, nobody is called back when it is answered.
+  void cancel(String permission, Callback callback) {
+    final List<Callback> callbacks = pending.get(permission);
+    if (callbacks == null || !callbacks.remove(callback) || !callbacks.isEmpty()) {
+      return;
+    }
+    if (!permission.equals(prompted)) {
+      pending.remove(permission);
+      queue.remove(permission);
+    }
+  }
+
+  /// Fails every waiting call, e.g. when the plugin is detached
+  void cancelAll() {
+    final List<List<Callback>> all = new ArrayList<>(pending.values());
+    pending.clear();
+    queue.clear();
+    prompted = null;
+    for (List<Callback> callbacks : all) {
+      for (Callback callback : callbacks) {
+        callback.onDenied();
+      }
+    }
+  }
+
+  private void promptNext() {
+    if (prompted != null) {
+      return;
+    }
+    while (activity != null && !queue.isEmpty()) {
+      final String permission = queue.poll();
+      if (activity.checkSelfPermission(permission) == PackageManager.PERMISSION_GRANTED) {
+        // granted meanwhile, e.g. with an earlier prompt
+        final List<Callback> callbacks = pending.remove(permission);
+        for (Callback callback : callbacks) {
+          callback.onGranted();
+        }
+        continue;
+      }
+      prompted = permission;
+      activity.requestPermissions(new String[] {permission}, REQUEST_CODE);
+      return;
+    }
+  }
+}
@@ -0,0 +1,274 @@
+package com.alternadom.wifiiot;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Index of {@link WifiManager#getScanResults()} by SSID, strongest BSSID first. It is rebuilt on
+ * the first lookup after {@link WifiManager#SCAN_RESULTS_AVAILABLE_ACTION}, so results are only
+ * read from the system when somebody asks. Entries older than the max age are left out of lookups,
+ * except for {@link #findForSecurity(String, String)}.
+ *
+ * <p>Callers can wait for the next scan with {@link #awaitScan(long, long)}, or be called back with
+ * {@link #whenScanned(long, Runnable)} without blocking a thread.
+ */
+class ScanIndex {
+  static final long DEFAULT_MAX_AGE = 120000;
+
+  /// One BSSID of an SSID, as of its last scan
+  static final class Entry {
+    final String ssid;
+    final String bssid;
+    final int level;
+    final int frequency;
+    final String capabilities;
+    /// [WifiCapabilities] bits of [capabilities]
+    final int capabilityFlags;
+    /// SystemClock.elapsedRealtime() when the BSSID was last seen
+    final long seenAt;
+
+    Entry(ScanResult result, long seenAt) {
+      this(result.SSID, result.BSSID, result.level, result.frequency, result.capabilities, seenAt);
+    }
+
+    Entry(String ssid, String bssid, int level, int frequency, String capabilities, long seenAt) {
+      this.ssid = ssid;
+      this.bssid = bssid;
+      this.level = level;
+      this.frequency = frequency;
+      this.capabilities = capabilities;
+      this.capabilityFlags = WifiCapabilities.of(capabilities);
+      this.seenAt = seenAt;
+    }
+
+    long getAge(long now) {
+      return now - seenAt;
+    }
+  }
+
+  private static final Comparator<Entry> STRONGEST_FIRST =
+      new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+          return b.level < a.level ? -1 : (b.level == a.level ? 0 : 1);
+        }
+      };
+
+  private final WifiManager wifiManager;
+  private boolean stale = true;
+  /// Number of scan results broadcasts received
+  private long generation = 0;
+  /// Generation of the last broadcast that brought new results
+  private long updatedGeneration = 0;
+  private long maxAge = DEFAULT_MAX_AGE;
+  private final HashMap<String, List<Entry>> bySsid = new HashMap<>();
+  /// Called back on the next broadcast
+  private final ArrayList<Runnable> waiters = new ArrayList<>();
+
+  private final BroadcastReceiver receiver =
+      new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+          // failed scans are broadcast too, with the previous results
+          invalidate(
+              Build.VERSION.SDK_INT < Build.VERSION_CODES.M
+                  || intent.getBooleanExtra(WifiManager.EXTRA_RESULTS_UPDATED, true));
+        }
+      };
+
+  ScanIndex(WifiManager wifiManager) {
+    this.wifiManager = wifiManager;
+  }
+
+  void register(Context context) {
+    context.registerReceiver(receiver, new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
+  }
+
+  void unregister(Context context) {
+    context.unregisterReceiver(receiver);
+  }
+
+  void invalidate(boolean updated) {
+    final List<Runnable> scanned;
+    synchronized (this) {
+      stale = true;
+      generation++;
+      if (updated) {
+        updatedGeneration = generation;
+      }
+      notifyAll();
+      scanned = new ArrayList<>(waiters);
+      waiters.clear();
+    }
+    for (Runnable waiter : scanned) {
+      waiter.run();
+    }
+  }
+
+  /// Current scan generation, to be passed to [awaitScan]
+  synchronized long getGeneration() {
+    return generation;
+  }
+
+  /// Whether a scan brought new results after [generation]
+  synchronized boolean isUpdatedSince(long generation) {
+    return updatedGeneration > generation;
+  }
+
+  /// Blocks until a scan newer than [generation] completed, successfully or
+  /// not, or [timeout] milliseconds passed. Returns whether one completed.
+  synchronized boolean awaitScan(long generation, long timeout) {
+    final long deadline = SystemClock.elapsedRealtime() + timeout;
+    try {
+      while (this.generation == generation) {
+        final long remaining = deadline - SystemClock.elapsedRealtime();
+        if (remaining <= 0) {
+          return false;
+        }
+        wait(remaining);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    return true;
+  }
+
+  /// Runs [waiter] on the main thread once a scan newer than [generation]
+  /// completed, successfully or not. Returns false, without running it, if
+  /// one already did.
+  synchronized boolean whenScanned(long generation, Runnable waiter) {
+    if (this.generation != generation) {
+      return false;
+    }
+    waiters.add(waiter);
+    return true;
+  }
+
+  synchronized void removeWaiter(Runnable waiter) {
+    waiters.remove(waiter);
+  }
+
+  /// Milliseconds after which a BSSID that was not seen again is left out
+  synchronized void setMaxAge(long maxAge) {
+    this.maxAge = maxAge;
+  }
+
+  /// BSSIDs of [ssid] within the max age, strongest first
+  synchronized List<Entry> get(String ssid) {
+    ensureFresh();
+    final List<Entry> entries = bySsid.get(ssid);
+    if (entries == null) {
+      return Collections.emptyList();
+    }
+    final long now = SystemClock.elapsedRealtime();
+    final List<Entry> fresh = new ArrayList<>(entries.size());
+    for (Entry entry : entries) {
+      if (entry.getAge(now) <= maxAge) {
+        fresh.add(entry);
+      }
+    }
+    return fresh;
+  }
+
+  /// BSSIDs of every SSID starting with [prefix] within the max age, in no
+  /// particular order
+  synchronized List<Entry> getWithPrefix(String prefix) {
+    ensureFresh();
+    final long now = SystemClock.elapsedRealtime();
+    final List<Entry> fresh = new ArrayList<>();
+    for (List<Entry> entries : bySsid.values()) {
+      if (!entries.get(0).ssid.startsWith(prefix)) {
+        continue;
+      }
+      for (Entry entry : entries) {
+        if (entry.getAge(now) <= maxAge) {
+          fresh.add(entry);
+        }
+      }
+    }
+    return fresh;
+  }
+
+  /// Strongest BSSID of [ssid] within the max age, restricted to [bssid]
+  /// (case insensitive) unless null, or null if there is none
+  synchronized Entry find(String ssid, String bssid) {
+    return first(get(ssid), bssid);
+  }
+
+  /// Like [find], but falls back to BSSIDs older than the max age: the
+  /// security a network advertises outlives the scan throttling, and without
+  /// it a protected network would be joined as an open one
+  synchronized Entry findForSecurity(String ssid, String bssid) {
+    final Entry fresh = find(ssid, bssid);
+    if (fresh != null) {
+      return fresh;
+    }
+    final List<Entry> entries = bySsid.get(ssid);
+    return entries != null ? first(entries, bssid) : null;
+  }
+
+  private static Entry first(List<Entry> entries, String bssid) {
+    for (Entry entry : entries) {
+      if (bssid == null || entry.bssid == null || entry.bssid.equalsIgnoreCase(bssid)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  private void ensureFresh() {
+    if (!stale) {
+      return;
+    }
+    final List<Entry> entries = new ArrayList<>();
+    final List<ScanResult> results = wifiManager.getScanResults();
+    if (results != null) {
+      final long now = SystemClock.elapsedRealtime();
+      for (ScanResult result : results) {
+        if (result.SSID != null) {
+          entries.add(new Entry(result, seenAt(result, now)));
+        }
+      }
+    }
+    index(entries);
+  }
+
+  /// Replaces the index with [entries], of every age
+  synchronized void index(List<Entry> entries) {
+    bySsid.clear();
+    for (Entry entry : entries) {
+      List<Entry> ssidEntries = bySsid.get(entry.ssid);
+      if (ssidEntries == null) {
+        ssidEntries = new ArrayList<>(1);
+        bySsid.put(entry.ssid, ssidEntries);
+      }
+      ssidEntries.add(entry);
+    }
+    for (List<Entry> ssidEntries : bySsid.values()) {
+      if (ssidEntries.size() > 1) {
+        Collections.sort(ssidEntries, STRONGEST_FIRST);
+      }
+    }
+    stale = false;
+  }
+
+  private static long seenAt(ScanResult result, long now) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 && result.timestamp > 0) {
+      // microseconds since boot
+      return Math.min(result.timestamp / 1000, now);
+    }
+    return now;
+  }
+}
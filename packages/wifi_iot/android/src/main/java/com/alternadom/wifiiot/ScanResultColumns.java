@@ -0,0 +1,133 @@
+package com.alternadom.wifiiot;
+
+import android.net.wifi.ScanResult;
+import android.os.Build;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Encodes scan results column by column into one direct {@link ByteBuffer}, in native byte order,
+ * so that Dart can wrap every column as a typed data view without decoding fields one by one.
+ *
+ * <p>Layout, version 1, {@code n} results:
+ *
+ * <pre>
+ * int32  version
+ * int32  n
+ * int32  length of the SSID blob
+ * int32  length of the capabilities blob
+ * int64  BSSID[n], 48 bit MAC address, -1 if missing
+ * int64  timestamp[n]
+ * int32  frequency[n]
+ * int32  level[n]
+ * int32  SSID offset[n + 1], into the SSID blob
+ * int32  capabilities offset[n + 1], into the capabilities blob
+ * byte   SSID blob, UTF-8
+ * byte   capabilities blob, UTF-8
+ * </pre>
+ *
+ * Results with an empty SSID are skipped, like in the JSON payload. New versions may only append
+ * sections after the ones above.
+ */
+class ScanResultColumns {
+  static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  static ByteBuffer encode(List<ScanResult> results) {
+    int n = 0;
+    for (ScanResult result : results) {
+      if (!result.SSID.equals("")) {
+        n++;
+      }
+    }
+
+    final byte[][] ssids = new byte[n][];
+    final byte[][] capabilities = new byte[n][];
+    int ssidBytes = 0;
+    int capabilitiesBytes = 0;
+    int i = 0;
+    for (ScanResult result : results) {
+      if (!result.SSID.equals("")) {
+        ssids[i] = result.SSID.getBytes(UTF_8);
+        capabilities[i] =
+            result.capabilities != null ? result.capabilities.getBytes(UTF_8) : new byte[0];
+        ssidBytes += ssids[i].length;
+        capabilitiesBytes += capabilities[i].length;
+        i++;
+      }
+    }
+
+    final ByteBuffer buffer =
+        ByteBuffer.allocateDirect(
+                HEADER_SIZE + n * 16 + n * 8 + (n + 1) * 8 + ssidBytes + capabilitiesBytes)
+            .order(ByteOrder.nativeOrder());
+    buffer.putInt(VERSION).putInt(n).putInt(ssidBytes).putInt(capabilitiesBytes);
+
+    for (ScanResult result : results) {
+      if (!result.SSID.equals("")) {
+        buffer.putLong(bssidToLong(result.BSSID));
+      }
+    }
+    for (ScanResult result : results) {
+      if (!result.SSID.equals("")) {
+        buffer.putLong(
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 ? result.timestamp : 0);
+      }
+    }
+    for (ScanResult result : results) {
+      if (!result.SSID.equals("")) {
+        buffer.putInt(result.frequency);
+      }
+    }
+    for (ScanResult result : results) {
+      if (!result.SSID.equals("")) {
+        buffer.putInt(result.level);
+      }
+    }
+    putOffsets(buffer, ssids);
+    putOffsets(buffer, capabilities);
+    for (byte[] ssid : ssids) {
+      buffer.put(ssid);
+    }
+    for (byte[] capability : capabilities) {
+      buffer.put(capability);
+    }
+    return buffer;
+  }
+
+  private static void putOffsets(ByteBuffer buffer, byte[][] values) {
+    int offset = 0;
+    buffer.putInt(offset);
+    for (byte[] value : values) {
+      offset += value.length;
+      buffer.putInt(offset);
+    }
+  }
+
+  /// Packs a "aa:bb:cc:dd:ee:ff" BSSID into the low 48 bits of a long, -1 if
+  /// it is missing or malformed.
+  static long bssidToLong(String bssid) {
+    if (bssid == null || bssid.length() != 17) {
+      return -1;
+    }
+    long value = 0;
+    for (int k = 0; k < 17; k++) {
+      final char c = bssid.charAt(k);
+      if (k % 3 == 2) {
+        if (c != ':') {
+          return -1;
+        }
+        continue;
+      }
+      final int digit = Character.digit(c, 16);
+      if (digit < 0) {
+        return -1;
+      }
+      value = (value << 4) | digit;
+    }
+    return value;
+  }
+}
@@ -0,0 +1,93 @@
+package com.alternadom.wifiiot;
+
+import android.net.wifi.ScanResult;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns successive scan result lists into delta events against the last emitted snapshot, keyed
+ * by BSSID. An entry counts as changed when its SSID, capabilities or frequency changed, or when
+ * its level moved by at least {@code levelThreshold} dBm since it was last emitted. Every {@code
+ * keyframeInterval} events, and for the first one, a full keyframe is sent instead so that new
+ * subscribers can resync.
+ *
+ * <p>Events are maps with a {@code type} of either {@code keyframe} (with {@code networks}) or
+ * {@code delta} (with {@code added}, {@code changed} and {@code removed}, the latter holding only
+ * BSSIDs). Networks use the same maps as the typed scan result payload.
+ */
+class ScanResultDelta {
+  static final int DEFAULT_LEVEL_THRESHOLD = 5;
+  static final int DEFAULT_KEYFRAME_INTERVAL = 10;
+
+  private final int levelThreshold;
+  private final int keyframeInterval;
+  private HashMap<String, Map<String, Object>> snapshot = new HashMap<>();
+  private int eventsSinceKeyframe = -1;
+
+  ScanResultDelta(int levelThreshold, int keyframeInterval) {
+    this.levelThreshold = levelThreshold;
+    this.keyframeInterval = keyframeInterval;
+  }
+
+  /// Returns the event for the given results, or null if nothing changed
+  /// enough to be worth sending.
+  Map<String, Object> next(List<ScanResult> results) {
+    final boolean keyframe = eventsSinceKeyframe < 0 || eventsSinceKeyframe + 1 >= keyframeInterval;
+    final HashMap<String, Map<String, Object>> current = new HashMap<>();
+    final List<Map<String, Object>> added = new ArrayList<>();
+    final List<Map<String, Object>> changed = new ArrayList<>();
+
+    for (ScanResult result : results) {
+      if (result.SSID.equals("") || result.BSSID == null) {
+        continue;
+      }
+      final Map<String, Object> previous = snapshot.get(result.BSSID);
+      if (previous == null) {
+        final Map<String, Object> network = WifiIotPlugin.scanResultToMap(result);
+        added.add(network);
+        current.put(result.BSSID, network);
+      } else if (keyframe || hasChanged(previous, result)) {
+        final Map<String, Object> network = WifiIotPlugin.scanResultToMap(result);
+        changed.add(network);
+        current.put(result.BSSID, network);
+      } else {
+        // keep what was last emitted, so small level drifts add up
+        current.put(result.BSSID, previous);
+      }
+    }
+
+    final List<String> removed = new ArrayList<>();
+    for (String bssid : snapshot.keySet()) {
+      if (!current.containsKey(bssid)) {
+        removed.add(bssid);
+      }
+    }
+    snapshot = current;
+
+    final Map<String, Object> event = new HashMap<>();
+    if (keyframe) {
+      eventsSinceKeyframe = 0;
+      event.put("type", "keyframe");
+      event.put("networks", new ArrayList<>(current.values()));
+      return event;
+    }
+    if (added.isEmpty() && changed.isEmpty() && removed.isEmpty()) {
+      return null;
+    }
+    eventsSinceKeyframe++;
+    event.put("type", "delta");
+    event.put("added", added);
+    event.put("changed", changed);
+    event.put("removed", removed);
+    return event;
+  }
+
+  private boolean hasChanged(Map<String, Object> previous, ScanResult result) {
+    return !result.SSID.equals(previous.get("SSID"))
+        || !String.valueOf(result.capabilities).equals(String.valueOf(previous.get("capabilities")))
+        || result.frequency != (Integer) previous.get("frequency")
+        || Math.abs(result.level - (Integer) previous.get("level")) >= levelThreshold;
+  }
+}
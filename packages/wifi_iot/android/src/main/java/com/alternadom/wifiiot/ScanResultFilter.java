@@ -0,0 +1,312 @@
+package com.alternadom.wifiiot;
+
+import android.net.wifi.ScanResult;
+import android.os.Build;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Filter and projection applied to scan results before they are serialized, so that results the
+ * caller would throw away are never encoded.
+ *
+ * <p>The filter spec is a map with any of {@code ssidPrefix}, {@code ssidPattern} (a regex that
+ * must match the whole SSID), {@code bssids} (list, case insensitive), {@code minLevel} (dBm),
+ * {@code bands} (list of {@code 2.4GHz}, {@code 5GHz}, {@code 6GHz}) and {@code security} (list of
+ * {@code open}, {@code wep}, {@code wpa}, {@code wpa2}, {@code wpa3}, {@code eap}). The field mask
+ * is a list of the keys to keep, among {@code SSID}, {@code BSSID}, {@code capabilities}, {@code
+ * frequency}, {@code level} and {@code timestamp}; {@code capabilities} also brings the parsed
+ * {@code capabilityFlags}, see {@link WifiCapabilities}. Results with an empty SSID are always
+ * left out, as before.
+ */
+class ScanResultFilter {
+  static final int FIELD_SSID = 1;
+  static final int FIELD_BSSID = 1 << 1;
+  static final int FIELD_CAPABILITIES = 1 << 2;
+  static final int FIELD_FREQUENCY = 1 << 3;
+  static final int FIELD_LEVEL = 1 << 4;
+  static final int FIELD_TIMESTAMP = 1 << 5;
+  static final int ALL_FIELDS = (1 << 6) - 1;
+
+  static final int BAND_2_4_GHZ = 1;
+  static final int BAND_5_GHZ = 1 << 1;
+  static final int BAND_6_GHZ = 1 << 2;
+
+  static final int SECURITY_OPEN = 1;
+  static final int SECURITY_WEP = 1 << 1;
+  static final int SECURITY_WPA = 1 << 2;
+  static final int SECURITY_WPA2 = 1 << 3;
+  static final int SECURITY_WPA3 = 1 << 4;
+  static final int SECURITY_EAP = 1 << 5;
+
+  /// Keeps every result with a non empty SSID, with all fields
+  static final ScanResultFilter ALL =
+      new ScanResultFilter(null, null, null, Integer.MIN_VALUE, 0, 0, ALL_FIELDS);
+
+  private final String ssidPrefix;
+  private final Pattern ssidPattern;
+  private final Set<String> bssids;
+  private final int minLevel;
+  private final int bands;
+  private final int security;
+  private final int fields;
+
+  private ScanResultFilter(
+      String ssidPrefix,
+      Pattern ssidPattern,
+      Set<String> bssids,
+      int minLevel,
+      int bands,
+      int security,
+      int fields) {
+    this.ssidPrefix = ssidPrefix;
+    this.ssidPattern = ssidPattern;
+    this.bssids = bssids;
+    this.minLevel = minLevel;
+    this.bands = bands;
+    this.security = security;
+    this.fields = fields;
+  }
+
+  /**
+   * Parses the {@code filter} and {@code fields} call arguments, either of which can be null.
+   *
+   * @throws IllegalArgumentException if a value is of the wrong type or unknown, or if the
+   *     pattern does not compile
+   */
+  static ScanResultFilter fromArguments(Object filter, Object fields) {
+    if (filter == null && fields == null) {
+      return ALL;
+    }
+    final Map<?, ?> spec = filter != null ? asMap(filter, "filter") : null;
+    String ssidPrefix = null;
+    Pattern ssidPattern = null;
+    Set<String> bssids = null;
+    int minLevel = Integer.MIN_VALUE;
+    int bands = 0;
+    int security = 0;
+    if (spec != null) {
+      if (spec.get("ssidPrefix") != null) {
+        ssidPrefix = spec.get("ssidPrefix").toString();
+      }
+      if (spec.get("ssidPattern") != null) {
+        ssidPattern = Pattern.compile(spec.get("ssidPattern").toString());
+      }
+      if (spec.get("bssids") != null) {
+        bssids = new HashSet<>();
+        for (Object bssid : asList(spec.get("bssids"), "bssids")) {
+          bssids.add(bssid.toString().toLowerCase(Locale.US));
+        }
+      }
+      if (spec.get("minLevel") != null) {
+        if (!(spec.get("minLevel") instanceof Integer)) {
+          throw new IllegalArgumentException("minLevel must be an int");
+        }
+        minLevel = (Integer) spec.get("minLevel");
+      }
+      if (spec.get("bands") != null) {
+        for (Object band : asList(spec.get("bands"), "bands")) {
+          bands |= parseBand(band.toString());
+        }
+      }
+      if (spec.get("security") != null) {
+        for (Object securityClass : asList(spec.get("security"), "security")) {
+          security |= parseSecurity(securityClass.toString());
+        }
+      }
+    }
+    int fieldMask = ALL_FIELDS;
+    if (fields != null) {
+      fieldMask = 0;
+      for (Object field : asList(fields, "fields")) {
+        fieldMask |= parseField(field.toString());
+      }
+    }
+    return new ScanResultFilter(
+        ssidPrefix, ssidPattern, bssids, minLevel, bands, security, fieldMask);
+  }
+
+  boolean matches(ScanResult result) {
+    if (result.SSID == null || result.SSID.equals("")) {
+      return false;
+    }
+    if (result.level < minLevel) {
+      return false;
+    }
+    if (ssidPrefix != null && !result.SSID.startsWith(ssidPrefix)) {
+      return false;
+    }
+    if (bssids != null
+        && (result.BSSID == null || !bssids.contains(result.BSSID.toLowerCase(Locale.US)))) {
+      return false;
+    }
+    if (bands != 0 && (bandOf(result.frequency) & bands) == 0) {
+      return false;
+    }
+    if (security != 0 && (securityOf(result.capabilities) & security) == 0) {
+      return false;
+    }
+    // the regex is the most expensive check, keep it last
+    return ssidPattern == null || ssidPattern.matcher(result.SSID).matches();
+  }
+
+  List<ScanResult> filter(List<ScanResult> results) {
+    if (this == ALL) {
+      return results;
+    }
+    final List<ScanResult> filtered = new ArrayList<>();
+    for (ScanResult result : results) {
+      if (matches(result)) {
+        filtered.add(result);
+      }
+    }
+    return filtered;
+  }
+
+  /// Projects the result on the field mask, as a map for typed payloads
+  Map<String, Object> toMap(ScanResult result) {
+    if (fields == ALL_FIELDS) {
+      return WifiIotPlugin.scanResultToMap(result);
+    }
+    final Map<String, Object> wifiMap = new HashMap<>();
+    if ((fields & FIELD_SSID) != 0) wifiMap.put("SSID", result.SSID);
+    if ((fields & FIELD_BSSID) != 0) wifiMap.put("BSSID", result.BSSID);
+    if ((fields & FIELD_CAPABILITIES) != 0) {
+      wifiMap.put("capabilities", result.capabilities);
+      wifiMap.put("capabilityFlags", WifiCapabilities.of(result.capabilities));
+    }
+    if ((fields & FIELD_FREQUENCY) != 0) wifiMap.put("frequency", result.frequency);
+    if ((fields & FIELD_LEVEL) != 0) wifiMap.put("level", result.level);
+    if ((fields & FIELD_TIMESTAMP) != 0) wifiMap.put("timestamp", timestampOf(result));
+    return wifiMap;
+  }
+
+  /// Projects the result on the field mask, as a JSON object
+  JSONObject toJson(ScanResult result) throws JSONException {
+    final JSONObject wifiObject = new JSONObject();
+    if ((fields & FIELD_SSID) != 0) wifiObject.put("SSID", result.SSID);
+    if ((fields & FIELD_BSSID) != 0) wifiObject.put("BSSID", result.BSSID);
+    if ((fields & FIELD_CAPABILITIES) != 0) {
+      wifiObject.put("capabilities", result.capabilities);
+      wifiObject.put("capabilityFlags", WifiCapabilities.of(result.capabilities));
+    }
+    if ((fields & FIELD_FREQUENCY) != 0) wifiObject.put("frequency", result.frequency);
+    if ((fields & FIELD_LEVEL) != 0) wifiObject.put("level", result.level);
+    if ((fields & FIELD_TIMESTAMP) != 0) wifiObject.put("timestamp", timestampOf(result));
+    return wifiObject;
+  }
+
+  static int bandOf(int frequency) {
+    if (frequency >= 2400 && frequency < 2500) {
+      return BAND_2_4_GHZ;
+    }
+    if (frequency >= 5925 && frequency <= 7125) {
+      return BAND_6_GHZ;
+    }
+    if (frequency >= 4900 && frequency < 5925) {
+      return BAND_5_GHZ;
+    }
+    return 0;
+  }
+
+  /// Coarse security class of a capabilities string, the strongest one wins.
+  /// OWE (enhanced open) counts as WPA3.
+  static int securityOf(String capabilities) {
+    final int mask = WifiCapabilities.of(capabilities);
+    if ((mask & WifiCapabilities.EAP) != 0) {
+      return SECURITY_EAP;
+    }
+    if ((mask & (WifiCapabilities.SAE | WifiCapabilities.OWE)) != 0) {
+      return SECURITY_WPA3;
+    }
+    if ((mask & WifiCapabilities.RSN) != 0) {
+      return SECURITY_WPA2;
+    }
+    if ((mask & WifiCapabilities.WPA) != 0) {
+      return SECURITY_WPA;
+    }
+    if ((mask & WifiCapabilities.WEP) != 0) {
+      return SECURITY_WEP;
+    }
+    return SECURITY_OPEN;
+  }
+
+  private static long timestampOf(ScanResult result) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+      return result.timestamp;
+    }
+    return 0;
+  }
+
+  private static int parseBand(String band) {
+    switch (band) {
+      case "2.4GHz":
+        return BAND_2_4_GHZ;
+      case "5GHz":
+        return BAND_5_GHZ;
+      case "6GHz":
+        return BAND_6_GHZ;
+      default:
+        throw new IllegalArgumentException("Unknown band: " + band);
+    }
+  }
+
+  private static int parseSecurity(String securityClass) {
+    switch (securityClass) {
+      case "open":
+        return SECURITY_OPEN;
+      case "wep":
+        return SECURITY_WEP;
+      case "wpa":
+        return SECURITY_WPA;
+      case "wpa2":
+        return SECURITY_WPA2;
+      case "wpa3":
+        return SECURITY_WPA3;
+      case "eap":
+        return SECURITY_EAP;
+      default:
+        throw new IllegalArgumentException("Unknown security class: " + securityClass);
+    }
+  }
+
+  private static int parseField(String field) {
+    switch (field) {
+      case "SSID":
+        return FIELD_SSID;
+      case "BSSID":
+        return FIELD_BSSID;
+      case "capabilities":
+        return FIELD_CAPABILITIES;
+      case "frequency":
+        return FIELD_FREQUENCY;
+      case "level":
+        return FIELD_LEVEL;
+      case "timestamp":
+        return FIELD_TIMESTAMP;
+      default:
+        throw new IllegalArgumentException("Unknown field: " + field);
+    }
+  }
+
+  private static Map<?, ?> asMap(Object value, String name) {
+    if (!(value instanceof Map)) {
+      throw new IllegalArgumentException(name + " must be a map");
+    }
+    return (Map<?, ?>) value;
+  }
+
+  private static List<?> asList(Object value, String name) {
+    if (!(value instanceof List)) {
+      throw new IllegalArgumentException(name + " must be a list");
+    }
+    return (List<?>) value;
+  }
+}
@@ -0,0 +1,172 @@
+package com.alternadom.wifiiot;
+
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Starts scans on behalf of the plugin within the throttling budget Android 9 and up applies to
+ * foreground apps, {@link #BUDGET} scans per {@link #BUDGET_WINDOW} milliseconds. A request made
+ * while a scan is in progress joins it rather than starting another one, and a request made once
+ * the budget is spent does not call {@link WifiManager#startScan()} at all: it is served from the
+ * last results, which the caller learns from the returned {@link Ticket}.
+ *
+ * <p>Scan completion is observed through the generations of the {@link ScanIndex}.
+ */
+class ScanScheduler {
+  static final int BUDGET = 4;
+  static final long BUDGET_WINDOW = 120000;
+
+  /// A scan whose results did not arrive within this many milliseconds is
+  /// no longer joined
+  static final long MAX_SCAN_DURATION = 15000;
+
+  interface Callback {
+    /// [fresh] tells whether results newer than the request are available
+    void onDone(boolean fresh);
+  }
+
+  /// What became of a scan request
+  static final class Ticket {
+    /// The request started a scan
+    final boolean started;
+    /// The request joined a scan in progress
+    final boolean joined;
+    /// Scan generation at the time of the request
+    final long generation;
+
+    Ticket(boolean started, boolean joined, long generation) {
+      this.started = started;
+      this.joined = joined;
+      this.generation = generation;
+    }
+
+    /// Whether results newer than the request are on their way
+    boolean isScanning() {
+      return started || joined;
+    }
+  }
+
+  private final WifiManager wifiManager;
+  private final ScanIndex index;
+  /// elapsedRealtime() of the last BUDGET scans started, a ring buffer
+  private final long[] starts = new long[BUDGET];
+  private int startCount = 0;
+  /// The system refused a scan, no scan is tried before this time
+  private long backoffUntil = 0;
+  /// Generation whose scan is in progress, -1 if none
+  private long inFlightGeneration = -1;
+  private long inFlightSince = 0;
+
+  private long requests = 0;
+  private long started = 0;
+  private long joined = 0;
+  private long throttled = 0;
+
+  ScanScheduler(WifiManager wifiManager, ScanIndex index) {
+    this.wifiManager = wifiManager;
+    this.index = index;
+  }
+
+  /// Starts a scan, or joins the one in progress, if the budget allows it
+  synchronized Ticket request() {
+    final long now = SystemClock.elapsedRealtime();
+    final long generation = index.getGeneration();
+    requests++;
+    if (inFlightGeneration == generation && now - inFlightSince < MAX_SCAN_DURATION) {
+      joined++;
+      return new Ticket(false, true, generation);
+    }
+    inFlightGeneration = -1;
+    if (!hasBudget(now)) {
+      throttled++;
+      return new Ticket(false, false, generation);
+    }
+    if (!wifiManager.startScan()) {
+      // throttled by the system after all, e.g. because of scans we do not
+      // know about; back off for the time one scan takes to be given back
+      backoffUntil = now + BUDGET_WINDOW / BUDGET;
+      throttled++;
+      return new Ticket(false, false, generation);
+    }
+    starts[startCount % BUDGET] = now;
+    startCount++;
+    inFlightGeneration = generation;
+    inFlightSince = now;
+    started++;
+    return new Ticket(true, false, generation);
+  }
+
+  /**
+   * Calls back once the results of the ticket's scan arrived, or {@code timeout} milliseconds
+   * passed, without blocking a thread in the meantime. The callback runs once, on the main thread.
+   */
+  void whenDone(final Ticket ticket, long timeout, final Callback callback) {
+    final Handler handler = new Handler(Looper.getMainLooper());
+    final AtomicBoolean done = new AtomicBoolean();
+    final Runnable finish =
+        new Runnable() {
+          @Override
+          public void run() {
+            if (done.compareAndSet(false, true)) {
+              handler.removeCallbacks(this);
+              index.removeWaiter(this);
+              callback.onDone(isFresh(ticket));
+            }
+          }
+        };
+    if (!ticket.isScanning() || !index.whenScanned(ticket.generation, finish)) {
+      handler.post(finish);
+      return;
+    }
+    handler.postDelayed(finish, timeout);
+  }
+
+  /// Whether a scan brought new results since the ticket was issued
+  boolean isFresh(Ticket ticket) {
+    return index.isUpdatedSince(ticket.generation);
+  }
+
+  private boolean hasBudget(long now) {
+    if (now < backoffUntil) {
+      return false;
+    }
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P || startCount < BUDGET) {
+      return true;
+    }
+    // the oldest of the last BUDGET scans must have left the window
+    return now - starts[startCount % BUDGET] >= BUDGET_WINDOW;
+  }
+
+  /// Milliseconds since the newest of [results] was seen, -1 if unknown
+  static long ageOf(List<ScanResult> results) {
+    if (results == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR1) {
+      return -1;
+    }
+    long newest = 0;
+    for (ScanResult result : results) {
+      newest = Math.max(newest, result.timestamp);
+    }
+    if (newest == 0) {
+      return -1;
+    }
+    // timestamps are microseconds since boot
+    return Math.max(0, SystemClock.elapsedRealtime() - newest / 1000);
+  }
+
+  synchronized Map<String, Object> getStats() {
+    final Map<String, Object> stats = new HashMap<>();
+    stats.put("requests", requests);
+    stats.put("started", started);
+    stats.put("joined", joined);
+    stats.put("throttled", throttled);
+    return stats;
+  }
+}
@@ -0,0 +1,138 @@
+package com.alternadom.wifiiot;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import io.flutter.plugin.common.MethodChannel.Result;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Coalesces identical read-only system service calls. A call made while an identical one (same
+ * key) is in flight does not start another read, it gets the result of the one in flight. With a
+ * freshness window, calls made shortly after a read completed get its result as well.
+ *
+ * <p>Must be used from the main thread, reads run on the given executor.
+ */
+class SingleFlight {
+  interface Read {
+    Object read() throws Exception;
+  }
+
+  private static class Flight {
+    final ArrayList<Result> waiters = new ArrayList<>();
+    boolean done;
+    long completedAt;
+    Object value;
+    Exception error;
+  }
+
+  private final Executor executor;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final HashMap<String, Flight> flights = new HashMap<>();
+  private long window;
+
+  private long calls;
+  private long executed;
+  private long joined;
+  private long cached;
+
+  SingleFlight(Executor executor) {
+    this.executor = executor;
+  }
+
+  /// Results completed less than [window] milliseconds ago are reused, 0 only
+  /// shares reads still in flight
+  void setWindow(long window) {
+    this.window = window;
+    final Iterator<Flight> iterator = flights.values().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().done) {
+        iterator.remove();
+      }
+    }
+  }
+
+  void call(final String key, final Read read, Result result) {
+    calls++;
+    final Flight existing = flights.get(key);
+    if (existing != null) {
+      if (!existing.done) {
+        joined++;
+        existing.waiters.add(result);
+        return;
+      }
+      if (SystemClock.elapsedRealtime() - existing.completedAt < window) {
+        cached++;
+        result.success(existing.value);
+        return;
+      }
+    }
+
+    executed++;
+    final Flight flight = new Flight();
+    flight.waiters.add(result);
+    flights.put(key, flight);
+    final Runnable task =
+        new Runnable() {
+          @Override
+          public void run() {
+            Object value = null;
+            Exception error = null;
+            try {
+              value = read.read();
+            } catch (Exception e) {
+              error = e;
+            }
+            final Object readValue = value;
+            final Exception readError = error;
+            mainHandler.post(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    complete(key, flight, readValue, readError);
+                  }
+                });
+          }
+        };
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.run();
+    }
+  }
+
+  private void complete(String key, Flight flight, Object value, Exception error) {
+    flight.done = true;
+    flight.completedAt = SystemClock.elapsedRealtime();
+    flight.value = value;
+    flight.error = error;
+    // failed reads are never reused
+    if ((error != null || window <= 0) && flights.get(key) == flight) {
+      flights.remove(key);
+    }
+    for (Result waiter : flight.waiters) {
+      if (error != null) {
+        waiter.error("Exception", error.getMessage(), null);
+      } else {
+        waiter.success(value);
+      }
+    }
+    flight.waiters.clear();
+  }
+
+  /// Counts of calls, reads actually executed, calls that joined a read in
+  /// flight and calls answered from a fresh result
+  Map<String, Object> getStats() {
+    final Map<String, Object> stats = new HashMap<>();
+    stats.put("calls", calls);
+    stats.put("executed", executed);
+    stats.put("joined", joined);
+    stats.put("cached", cached);
+    return stats;
+  }
+}
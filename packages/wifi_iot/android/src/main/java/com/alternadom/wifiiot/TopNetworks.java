@@ -0,0 +1,75 @@
+package com.alternadom.wifiiot;
+
+import android.net.wifi.ScanResult;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Selects the k strongest scan results with a bounded min-heap, in O(n log k), instead of sorting
+ * every result.
+ */
+class TopNetworks {
+  /// Weakest first, so the heap head is the one to evict
+  private static final Comparator<ScanResult> BY_LEVEL =
+      new Comparator<ScanResult>() {
+        @Override
+        public int compare(ScanResult a, ScanResult b) {
+          return a.level < b.level ? -1 : (a.level == b.level ? 0 : 1);
+        }
+      };
+
+  private TopNetworks() {}
+
+  /**
+   * Returns the k strongest results matching the filter, strongest first.
+   *
+   * @param results scan results, null is treated as no results
+   * @param perSsid keep only the strongest BSSID of each SSID
+   */
+  static List<ScanResult> select(
+      List<ScanResult> results, int k, boolean perSsid, ScanResultFilter filter) {
+    if (k <= 0 || results == null || results.isEmpty()) {
+      return new ArrayList<>();
+    }
+    Iterable<ScanResult> candidates = results;
+    if (perSsid) {
+      final HashMap<String, ScanResult> strongest = new HashMap<>();
+      for (ScanResult result : results) {
+        if (!filter.matches(result)) {
+          continue;
+        }
+        final ScanResult current = strongest.get(result.SSID);
+        if (current == null || result.level > current.level) {
+          strongest.put(result.SSID, result);
+        }
+      }
+      candidates = strongest.values();
+    }
+
+    // k comes from the caller, the heap never holds more than every result
+    final PriorityQueue<ScanResult> heap =
+        new PriorityQueue<>(Math.min(k, results.size()), BY_LEVEL);
+    for (ScanResult result : candidates) {
+      if (!perSsid && !filter.matches(result)) {
+        continue;
+      }
+      if (heap.size() < k) {
+        heap.add(result);
+      } else if (result.level > heap.peek().level) {
+        heap.poll();
+        heap.add(result);
+      }
+    }
+
+    final List<ScanResult> top = new ArrayList<>(heap.size());
+    while (!heap.isEmpty()) {
+      top.add(heap.poll());
+    }
+    Collections.reverse(top);
+    return top;
+  }
+}
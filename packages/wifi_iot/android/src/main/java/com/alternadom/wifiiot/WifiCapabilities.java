@@ -0,0 +1,159 @@
+package com.alternadom.wifiiot;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parses {@link android.net.wifi.ScanResult#capabilities} strings, e.g. {@code
+ * [RSN-PSK+SAE-CCMP][ESS][MFPC]}, into a bitmask of protocols, key managements, ciphers and flags.
+ *
+ * <p>A scan has only a handful of distinct capabilities strings, so masks are memoized per string
+ * and each string is parsed once, in a single pass over its tokens.
+ */
+final class WifiCapabilities {
+  // protocols
+  static final int WEP = 1;
+  static final int WPA = 1 << 1;
+  static final int RSN = 1 << 2;
+
+  // key managements
+  static final int PSK = 1 << 4;
+  static final int SAE = 1 << 5;
+  static final int OWE = 1 << 6;
+  static final int EAP = 1 << 7;
+  static final int EAP_SUITE_B = 1 << 8;
+  static final int FT = 1 << 9;
+  static final int OWE_TRANSITION = 1 << 10;
+
+  // ciphers
+  static final int CCMP = 1 << 12;
+  static final int TKIP = 1 << 13;
+  static final int GCMP = 1 << 14;
+
+  // flags
+  static final int WPS = 1 << 16;
+  static final int ESS = 1 << 17;
+  static final int IBSS = 1 << 18;
+  /// Protected management frames capable
+  static final int PMF_CAPABLE = 1 << 19;
+  /// Protected management frames required
+  static final int PMF_REQUIRED = 1 << 20;
+
+  /// Upper bound of memoized strings, the memo is cleared when it is exceeded
+  private static final int MAX_MEMOIZED = 256;
+
+  private static final ConcurrentHashMap<String, Integer> memo = new ConcurrentHashMap<>();
+
+  private WifiCapabilities() {}
+
+  /// Bitmask of a capabilities string, 0 for null
+  static int of(String capabilities) {
+    if (capabilities == null) {
+      return 0;
+    }
+    final Integer cached = memo.get(capabilities);
+    if (cached != null) {
+      return cached;
+    }
+    final int mask = parse(capabilities);
+    if (memo.size() >= MAX_MEMOIZED) {
+      memo.clear();
+    }
+    memo.put(capabilities, mask);
+    return mask;
+  }
+
+  static int parse(String capabilities) {
+    int mask = 0;
+    final int length = capabilities.length();
+    int start = 0;
+    for (int i = 0; i <= length; i++) {
+      final char c = i < length ? capabilities.charAt(i) : ']';
+      if (c == '[' || c == ']' || c == '-' || c == '+' || c == '/') {
+        if (i > start) {
+          mask |= token(capabilities, start, i);
+        }
+        start = i + 1;
+      }
+    }
+    return mask;
+  }
+
+  private static int token(String capabilities, int start, int end) {
+    switch (capabilities.substring(start, end)) {
+      case "WEP":
+        return WEP;
+      case "WPA":
+        return WPA;
+      case "WPA2":
+      case "RSN":
+        return RSN;
+      case "PSK":
+        return PSK;
+      case "SAE":
+      case "SAE_EXT_KEY":
+        return SAE;
+      case "OWE":
+        return OWE;
+      case "OWE_TRANSITION":
+        return OWE_TRANSITION;
+      case "EAP":
+      case "FILS":
+        return EAP;
+      case "SUITE":
+      case "EAP_SUITE_B_192":
+        return EAP | EAP_SUITE_B;
+      case "FT":
+        return FT;
+      case "CCMP":
+      case "CCMP_256":
+        return CCMP;
+      case "TKIP":
+        return TKIP;
+      case "GCMP":
+      case "GCMP_256":
+        return GCMP;
+      case "WPS":
+        return WPS;
+      case "ESS":
+        return ESS;
+      case "IBSS":
+        return IBSS;
+      case "MFPC":
+        return PMF_CAPABLE;
+      case "MFPR":
+        return PMF_REQUIRED | PMF_CAPABLE;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Security to connect with, as understood by {@code connectTo}. Transition networks accepting
+   * both WPA2 and WPA3 are joined with WPA2, which every Android version supports.
+   *
+   * @return {@code "EAP"}, {@code "WPA3"}, {@code "WPA"}, {@code "OWE"}, {@code "WEP"} or null
+   *     for open networks
+   */
+  static String connectSecurityOf(int mask) {
+    if ((mask & EAP) != 0) {
+      return "EAP";
+    }
+    if ((mask & PSK) != 0) {
+      return "WPA";
+    }
+    if ((mask & SAE) != 0) {
+      return "WPA3";
+    }
+    if ((mask & OWE) != 0) {
+      return "OWE";
+    }
+    if ((mask & (WPA | RSN)) != 0) {
+      // a protocol without a known key management, as older devices report PSK
+      return "WPA";
+    }
+    if ((mask & WEP) != 0) {
+      return "WEP";
+    }
+    return null;
+  }
+}
@@ -0,0 +1,109 @@
+package com.alternadom.wifiiot;
+
+import info.whitebyte.hotspotmanager.ClientScanner;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Worker threads owned by the plugin, instead of one thread per call. Operations that change the
+ * Wi-Fi state (connect, find and connect) run one at a time on the mutating lane, so retries queue
+ * up instead of racing each other on the {@code WifiManager}. Reachability probing (client scans,
+ * the client monitor) runs on the probe lane, which a single scan can fill, so the cheap read-only
+ * calls get a small read lane of their own and never queue behind seconds of probes.
+ */
+class WifiExecutors {
+  private static final int READ_LANE_SIZE = 4;
+  private static final int PROBE_LANE_SIZE = ClientScanner.MAX_PARALLELISM;
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  final Lane mutating = new Lane("mutate", 1);
+  final Lane read = new Lane("read", READ_LANE_SIZE);
+  final Lane probe = new Lane("probe", PROBE_LANE_SIZE);
+
+  /// Interrupts running tasks and drops queued ones
+  void shutdown() {
+    mutating.shutdownNow();
+    read.shutdownNow();
+    probe.shutdownNow();
+  }
+
+  Map<String, Object> getStats() {
+    final Map<String, Object> stats = new HashMap<>();
+    stats.put("mutating", mutating.getStats());
+    stats.put("read", read.getStats());
+    stats.put("probe", probe.getStats());
+    return stats;
+  }
+
+  /**
+   * A scheduled pool with named daemon threads that records how long tasks given to {@link
+   * #execute(Runnable)} waited in the queue and ran. Idle threads exit after a while.
+   */
+  static class Lane extends ScheduledThreadPoolExecutor {
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+
+    Lane(final String name, int size) {
+      super(
+          size,
+          new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread = new Thread(runnable, "WifiIot-" + name + "-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+      allowCoreThreadTimeOut(true);
+      setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+      final long queuedAt = System.nanoTime();
+      submitted.incrementAndGet();
+      super.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              final long startedAt = System.nanoTime();
+              final long wait = startedAt - queuedAt;
+              totalWaitNanos.addAndGet(wait);
+              long max;
+              while (wait > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, wait)) {}
+              try {
+                command.run();
+              } finally {
+                totalRunNanos.addAndGet(System.nanoTime() - startedAt);
+                completed.incrementAndGet();
+              }
+            }
+          });
+    }
+
+    /// Queue depth, active threads, and wait and run times in milliseconds
+    Map<String, Object> getStats() {
+      final long done = completed.get();
+      final Map<String, Object> stats = new HashMap<>();
+      stats.put("queued", getQueue().size());
+      stats.put("active", getActiveCount());
+      stats.put("submitted", submitted.get());
+      stats.put("completed", done);
+      stats.put("avgWaitMs", done > 0 ? totalWaitNanos.get() / 1e6 / done : 0.0);
+      stats.put("maxWaitMs", maxWaitNanos.get() / 1e6);
+      stats.put("avgRunMs", done > 0 ? totalRunNanos.get() / 1e6 / done : 0.0);
+      return stats;
+    }
+  }
+}
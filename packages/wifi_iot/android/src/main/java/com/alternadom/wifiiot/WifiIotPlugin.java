@@ -25,25 +25,38 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
+import info.whitebyte.hotspotmanager.ClientChangeListener;
+import info.whitebyte.hotspotmanager.ClientMonitor;
+import info.whitebyte.hotspotmanager.ClientScanListener;
 import info.whitebyte.hotspotmanager.ClientScanResult;
+import info.whitebyte.hotspotmanager.ClientScanner;
 import info.whitebyte.hotspotmanager.FinishScanListener;
+import info.whitebyte.hotspotmanager.ReachabilityCache;
 import info.whitebyte.hotspotmanager.WIFI_AP_STATE;
 import info.whitebyte.hotspotmanager.WifiApManager;
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
 import io.flutter.plugin.common.PluginRegistry;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -60,13 +73,26 @@ public class WifiIotPlugin
   /// when the Flutter Engine is detached from the Activity
   private MethodChannel channel;
   private EventChannel eventChannel;
+  private EventChannel clientListEventChannel;
+  private EventChannel clientChangesEventChannel;
+  private BinaryMessenger binaryMessenger;
+  private static final String SCAN_COLUMNS_CHANNEL = "plugins.wififlutter.io/wifi_scan_columns";
 
   private Network joinedNetwork;
   private WifiManager moWiFi;
   private Context moContext;
   private WifiApManager moWiFiAPManager;
+  private WifiExecutors executors;
+  private WifiNetworkTracker wifiNetworkTracker;
+  private ConnectionInfoCache connectionInfo;
+  private SingleFlight reads;
+  private ConfiguredNetworkIndex configuredNetworks;
+  private ScanIndex scanIndex;
+  private ScanScheduler scanScheduler;
   private Activity moActivity;
   private BroadcastReceiver receiver;
+  /// Scan stream subscription waiting for the location permission
+  private PermissionBroker.Callback pendingListen;
   private WifiManager.LocalOnlyHotspotReservation apReservation;
   private WIFI_AP_STATE localOnlyHotspotState = WIFI_AP_STATE.WIFI_AP_STATE_DISABLED;
   private ConnectivityManager.NetworkCallback networkCallback;
@@ -75,47 +101,69 @@ public class WifiIotPlugin
   private List<WifiNetworkSuggestion> suggestionsToBeRemovedOnExit = new ArrayList<>();
 
   // Permission request management
-  private boolean requestingPermission = false;
-  private Result permissionRequestResultCallback = null;
-  private ArrayList<Object> permissionRequestCookie = new ArrayList<>();
-  private static final int PERMISSIONS_REQUEST_CODE_ACCESS_FINE_LOCATION_LOAD_WIFI_LIST = 65655435;
-  private static final int PERMISSIONS_REQUEST_CODE_ACCESS_FINE_LOCATION_ON_LISTEN = 65655436;
-  private static final int PERMISSIONS_REQUEST_CODE_ACCESS_FINE_LOCATION_FIND_AND_CONNECT = 65655437;
-  private static final int PERMISSIONS_REQUEST_CODE_ACCESS_NETWORK_STATE_IS_CONNECTED = 65655438;
+  private final PermissionBroker permissionBroker = new PermissionBroker();
+  /// Remembers connect failures across findAndConnectBest calls
+  private final CandidateRanker candidateRanker = new CandidateRanker();
+  private static final int DEFAULT_DEPRECATED_CONNECT_TIMEOUT_IN_SECONDS = 10;
+  private static final int DEFAULT_MAX_SCANS_UNTIL_SEEN = 4;
+  private static final int DEFAULT_SCAN_WAIT_TIMEOUT = 10000;
+  /// Limit of Settings.EXTRA_WIFI_NETWORK_LIST
+  private static final int MAX_NETWORKS_PER_ADD_NETWORKS_DIALOG = 5;
 
   // initialize members of this class with Context
   private void initWithContext(Context context) {
     moContext = context;
     moWiFi = (WifiManager) moContext.getApplicationContext().getSystemService(Context.WIFI_SERVICE);
-    moWiFiAPManager = new WifiApManager(moContext.getApplicationContext());
+    connectionInfo = new ConnectionInfoCache(moWiFi);
+    configuredNetworks = new ConfiguredNetworkIndex(moWiFi);
+    configuredNetworks.register(moContext);
+    scanIndex = new ScanIndex(moWiFi);
+    scanIndex.register(moContext);
+    scanScheduler = new ScanScheduler(moWiFi, scanIndex);
+    executors = new WifiExecutors();
+    moWiFiAPManager = new WifiApManager(moContext.getApplicationContext(), executors.probe);
+    reads = new SingleFlight(executors.read);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+      final ConnectivityManager manager =
+          (ConnectivityManager) moContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+      if (manager != null) {
+        wifiNetworkTracker = new WifiNetworkTracker(manager);
+        wifiNetworkTracker.start();
+      }
+    }
   }
 
   // initialize members of this class with Activity
   private void initWithActivity(Activity activity) {
     moActivity = activity;
+    permissionBroker.setActivity(activity);
   }
 
   // cleanup
   private void cleanup() {
     if (!ssidsToBeRemovedOnExit.isEmpty()) {
-      List<WifiConfiguration> wifiConfigList = moWiFi.getConfiguredNetworks();
-      for (String ssid : ssidsToBeRemovedOnExit) {
-        for (WifiConfiguration wifiConfig : wifiConfigList) {
-          if (wifiConfig.SSID.equals(ssid)) {
-            moWiFi.removeNetwork(wifiConfig.networkId);
-          }
-        }
-      }
+      configuredNetworks.removeAll(ssidsToBeRemovedOnExit);
     }
+    configuredNetworks.unregister(moContext);
+    scanIndex.unregister(moContext);
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && !suggestionsToBeRemovedOnExit.isEmpty()) {
       moWiFi.removeNetworkSuggestions(suggestionsToBeRemovedOnExit);
     }
     // setting all members to null to avoid memory leaks
+    moWiFiAPManager.stopClientMonitor();
     channel = null;
     eventChannel = null;
+    clientListEventChannel = null;
+    clientChangesEventChannel = null;
+    binaryMessenger = null;
     moActivity = null;
     moContext = null;
     moWiFi = null;
+    connectionInfo = null;
+    reads = null;
+    configuredNetworks = null;
+    scanIndex = null;
+    scanScheduler = null;
     moWiFiAPManager = null;
   }
 
@@ -124,8 +172,16 @@ public class WifiIotPlugin
     // initialize method and event channel and set handlers
     channel = new MethodChannel(binding.getBinaryMessenger(), "wifi_iot");
     eventChannel = new EventChannel(binding.getBinaryMessenger(), "plugins.wififlutter.io/wifi_scan");
+    clientListEventChannel =
+        new EventChannel(binding.getBinaryMessenger(), "plugins.wififlutter.io/wifi_ap_clients");
+    clientChangesEventChannel =
+        new EventChannel(binding.getBinaryMessenger(), "plugins.wififlutter.io/wifi_ap_client_changes");
     channel.setMethodCallHandler(this);
     eventChannel.setStreamHandler(this);
+    clientListEventChannel.setStreamHandler(clientListStreamHandler);
+    clientChangesEventChannel.setStreamHandler(clientChangesStreamHandler);
+    binaryMessenger = binding.getBinaryMessenger();
+    binaryMessenger.setMessageHandler(SCAN_COLUMNS_CHANNEL, scanColumnsHandler);
 
     // initializeWithContext
     initWithContext(binding.getApplicationContext());
@@ -136,9 +192,19 @@ public class WifiIotPlugin
     // set null as channel handlers
     channel.setMethodCallHandler(null);
     eventChannel.setStreamHandler(null);
+    clientListEventChannel.setStreamHandler(null);
+    clientChangesEventChannel.setStreamHandler(null);
+    binaryMessenger.setMessageHandler(SCAN_COLUMNS_CHANNEL, null);
 
     // set member to null
+    permissionBroker.cancelAll();
     cleanup();
+    executors.shutdown();
+    executors = null;
+    if (wifiNetworkTracker != null) {
+      wifiNetworkTracker.stop();
+      wifiNetworkTracker = null;
+    }
   }
 
   @Override
@@ -152,6 +218,7 @@ public class WifiIotPlugin
   public void onDetachedFromActivityForConfigChanges() {
     // set activity to null
     moActivity = null;
+    permissionBroker.setActivity(null);
   }
 
   @Override
@@ -165,62 +232,22 @@ public class WifiIotPlugin
   public void onDetachedFromActivity() {
     // set activity to null
     moActivity = null;
+    permissionBroker.setActivity(null);
   }
 
   @Override
   public boolean onRequestPermissionsResult(
       int requestCode, String[] permissions, int[] grantResults) {
-    final boolean wasPermissionGranted = grantResults.length > 0
-        && grantResults[0] == PackageManager.PERMISSION_GRANTED;
-    switch (requestCode) {
-      case PERMISSIONS_REQUEST_CODE_ACCESS_FINE_LOCATION_LOAD_WIFI_LIST:
-        if (wasPermissionGranted) {
-          _loadWifiList(permissionRequestResultCallback);
-        } else {
-          permissionRequestResultCallback.error(
-              "WifiIotPlugin.Permission", "Fine location permission denied", null);
-        }
-        requestingPermission = false;
-        return true;
-
-      case PERMISSIONS_REQUEST_CODE_ACCESS_FINE_LOCATION_ON_LISTEN:
-        if (wasPermissionGranted) {
-          final EventChannel.EventSink eventSink = (EventChannel.EventSink) permissionRequestCookie.get(0);
-          _onListen(eventSink);
-        }
-        requestingPermission = false;
-        return true;
-
-      case PERMISSIONS_REQUEST_CODE_ACCESS_FINE_LOCATION_FIND_AND_CONNECT:
-        if (wasPermissionGranted) {
-          final MethodCall poCall = (MethodCall) permissionRequestCookie.get(0);
-          _findAndConnect(poCall, permissionRequestResultCallback);
-        } else {
-          permissionRequestResultCallback.error(
-              "WifiIotPlugin.Permission", "Fine location permission denied", null);
-        }
-        requestingPermission = false;
-        return true;
-
-      case PERMISSIONS_REQUEST_CODE_ACCESS_NETWORK_STATE_IS_CONNECTED:
-        if (wasPermissionGranted) {
-          _isConnected(permissionRequestResultCallback);
-        } else {
-          permissionRequestResultCallback.error(
-              "WifiIotPlugin.Permission", "Network state permission denied", null);
-        }
-        requestingPermission = false;
-        return true;
-    }
-    requestingPermission = false;
-    return false;
+    return permissionBroker.onRequestPermissionsResult(requestCode, permissions, grantResults);
   }
 
   @Override
   public void onMethodCall(MethodCall poCall, Result poResult) {
     switch (poCall.method) {
       case "loadWifiList":
-        loadWifiList(poResult);
+      case "loadTopNetworks":
+      case "scanWifiList":
+        loadWifiList(poCall, poResult);
         break;
       case "forceWifiUsage":
         forceWifiUsage(poCall, poResult);
@@ -237,9 +264,21 @@ public class WifiIotPlugin
       case "registerWifiNetwork":
         registerWifiNetwork(poCall, poResult);
         break;
+      case "registerWifiNetworks":
+        registerWifiNetworks(poCall, poResult);
+        break;
       case "findAndConnect":
         findAndConnect(poCall, poResult);
         break;
+      case "findAndConnectBest":
+        findAndConnectBest(poCall, poResult);
+        break;
+      case "isSSIDInRange":
+        isSSIDInRange(poCall, poResult);
+        break;
+      case "setScanIndexMaxAge":
+        setScanIndexMaxAge(poCall, poResult);
+        break;
       case "isConnected":
         isConnected(poResult);
         break;
@@ -258,12 +297,24 @@ public class WifiIotPlugin
       case "getFrequency":
         getFrequency(poResult);
         break;
+      case "setReadCoalescing":
+        setReadCoalescing(poCall, poResult);
+        break;
+      case "getReadCoalescingStats":
+        poResult.success(reads.getStats());
+        break;
+      case "getConnectionSnapshot":
+        getConnectionSnapshot(poCall, poResult);
+        break;
       case "getIP":
         getIP(poResult);
         break;
       case "removeWifiNetwork":
         removeWifiNetwork(poCall, poResult);
         break;
+      case "removeWifiNetworks":
+        removeWifiNetworks(poCall, poResult);
+        break;
       case "isRegisteredWifiNetwork":
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q)
           isRegisteredWifiNetwork(poCall, poResult);
@@ -276,6 +327,9 @@ public class WifiIotPlugin
       case "isWiFiAPEnabled":
         isWiFiAPEnabled(poResult);
         break;
+      case "getWiFiAPApiAvailability":
+        poResult.success(moWiFiAPManager.getHiddenApiAvailability());
+        break;
       case "setWiFiAPEnabled":
         setWiFiAPEnabled(poCall, poResult);
         break;
@@ -285,6 +339,24 @@ public class WifiIotPlugin
       case "getClientList":
         getClientList(poCall, poResult);
         break;
+      case "setClientReachabilityCache":
+        setClientReachabilityCache(poCall, poResult);
+        break;
+      case "getClientReachabilityCacheStats":
+        getClientReachabilityCacheStats(poResult);
+        break;
+      case "setDiagnostics":
+        setDiagnostics(poCall, poResult);
+        break;
+      case "getConnectEvents":
+        getConnectEvents(poCall, poResult);
+        break;
+      case "getScanSchedulerStats":
+        poResult.success(scanScheduler.getStats());
+        break;
+      case "getExecutorStats":
+        poResult.success(executors.getStats());
+        break;
       case "getWiFiAPSSID":
         getWiFiAPSSID(poResult);
         break;
@@ -494,8 +566,10 @@ public class WifiIotPlugin
    * {@code false} if the list should contain unreachable (probably disconnected)
    * clients, {@code
    * true} otherwise param reachableTimeout Reachable Timout in miliseconds, 300
-   * is default param
-   * finishListener, Interface called when the scan method finishes
+   * is default param parallelism maximum number of concurrent reachability
+   * probes, at most ClientScanner.MAX_PARALLELISM param scanTimeout overall deadline of the scan in miliseconds param
+   * useCache {@code false} to probe every client even if a recent verdict is
+   * cached param finishListener, Interface called when the scan method finishes
    */
   private void getClientList(MethodCall poCall, final Result poResult) {
     Boolean onlyReachables = false;
@@ -508,6 +582,21 @@ public class WifiIotPlugin
       reachableTimeout = poCall.argument("reachableTimeout");
     }
 
+    Integer parallelism = ClientScanner.DEFAULT_PARALLELISM;
+    if (poCall.argument("parallelism") != null) {
+      parallelism = poCall.argument("parallelism");
+    }
+
+    Integer scanTimeout = 0;
+    if (poCall.argument("scanTimeout") != null) {
+      scanTimeout = poCall.argument("scanTimeout");
+    }
+
+    Boolean useCache = true;
+    if (poCall.argument("useCache") != null) {
+      useCache = poCall.argument("useCache");
+    }
+
     final Boolean finalOnlyReachables = onlyReachables;
     FinishScanListener oFinishScanListener = new FinishScanListener() {
       @Override
@@ -545,12 +634,164 @@ public class WifiIotPlugin
     };
 
     if (reachableTimeout != null) {
-      moWiFiAPManager.getClientList(onlyReachables, reachableTimeout, oFinishScanListener);
+      moWiFiAPManager.getClientList(
+          onlyReachables, reachableTimeout, parallelism, scanTimeout, useCache, oFinishScanListener);
     } else {
       moWiFiAPManager.getClientList(onlyReachables, oFinishScanListener);
     }
   }
 
+  /**
+   * Configures the cache of client reachability verdicts used by getClientList
+   * and clears it. *** setClientReachabilityCache : param positiveTtl, negativeTtl
+   * how long reachable and unreachable verdicts are reused in miliseconds, 0
+   * disables param maxSize maximum number of cached verdicts
+   */
+  private void setClientReachabilityCache(MethodCall poCall, Result poResult) {
+    Integer positiveTtl = poCall.argument("positiveTtl");
+    Integer negativeTtl = poCall.argument("negativeTtl");
+    Integer maxSize = poCall.argument("maxSize");
+
+    moWiFiAPManager.getReachabilityCache().configure(
+        positiveTtl != null ? positiveTtl : ReachabilityCache.DEFAULT_POSITIVE_TTL,
+        negativeTtl != null ? negativeTtl : ReachabilityCache.DEFAULT_NEGATIVE_TTL,
+        maxSize != null ? maxSize : ReachabilityCache.DEFAULT_MAX_SIZE);
+    poResult.success(null);
+  }
+
+  /// Returns the hit and miss counters and the size of the client reachability
+  /// cache
+  private void getClientReachabilityCacheStats(Result poResult) {
+    final ReachabilityCache cache = moWiFiAPManager.getReachabilityCache();
+    final Map<String, Object> stats = new HashMap<>();
+    stats.put("hits", cache.getHits());
+    stats.put("misses", cache.getMisses());
+    stats.put("size", cache.size());
+    poResult.success(stats);
+  }
+
+  /// [key] of stream arguments as an int, [defaultValue] if it is missing or
+  /// not a number, e.g. a long sent by Dart for a value beyond 32 bits
+  private static int intArgument(Map<?, ?> args, String key, int defaultValue) {
+    final Object value = args.get(key);
+    return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+  }
+
+  /**
+   * Streams the clients connected to the Hotspot as soon as their reachability is
+   * known, followed by a {@code complete} event. Takes the same arguments as
+   * {@link #getClientList(MethodCall, Result)}. Only the latest subscription
+   * receives events.
+   */
+  private final EventChannel.StreamHandler clientListStreamHandler = new EventChannel.StreamHandler() {
+    // accessed on the main thread only
+    private ClientScanListener activeScan;
+
+    @Override
+    public void onListen(Object arguments, final EventChannel.EventSink eventSink) {
+      final Map<?, ?> args = arguments instanceof Map ? (Map<?, ?>) arguments : new HashMap<>();
+      final boolean onlyReachables = Boolean.TRUE.equals(args.get("onlyReachables"));
+      final int reachableTimeout = intArgument(args, "reachableTimeout", 300);
+      final int parallelism =
+          intArgument(args, "parallelism", ClientScanner.DEFAULT_PARALLELISM);
+      final int scanTimeout = intArgument(args, "scanTimeout", 0);
+      final boolean useCache = !Boolean.FALSE.equals(args.get("useCache"));
+
+      activeScan = new ClientScanListener() {
+        @Override
+        public void onClientScanned(ClientScanResult client) {
+          if (activeScan == this) {
+            final Map<String, Object> event = clientToMap(client);
+            event.put("type", "client");
+            eventSink.success(event);
+          }
+        }
+
+        @Override
+        public void onFinishScan(ArrayList<ClientScanResult> clients) {
+          if (activeScan == this) {
+            final Map<String, Object> event = new HashMap<>();
+            event.put("type", "complete");
+            event.put("count", clients.size());
+            eventSink.success(event);
+            eventSink.endOfStream();
+            activeScan = null;
+          }
+        }
+      };
+      moWiFiAPManager.scanClients(
+          onlyReachables, reachableTimeout, parallelism, scanTimeout, useCache, activeScan);
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+      activeScan = null;
+    }
+  };
+
+  /**
+   * Monitors the clients connected to the Hotspot, emitting only the clients that
+   * {@code joined}, {@code left} or {@code changed} since the previous check.
+   * Arguments: onlyReachables, reachableTimeout, parallelism, sampleSize and
+   * interval in miliseconds. Only the latest subscription receives events.
+   */
+  private final EventChannel.StreamHandler clientChangesStreamHandler = new EventChannel.StreamHandler() {
+    // accessed on the main thread only
+    private ClientChangeListener activeMonitor;
+
+    @Override
+    public void onListen(Object arguments, final EventChannel.EventSink eventSink) {
+      final Map<?, ?> args = arguments instanceof Map ? (Map<?, ?>) arguments : new HashMap<>();
+      final boolean onlyReachables = Boolean.TRUE.equals(args.get("onlyReachables"));
+      final int reachableTimeout = intArgument(args, "reachableTimeout", 300);
+      final int parallelism =
+          intArgument(args, "parallelism", ClientScanner.DEFAULT_PARALLELISM);
+      final int sampleSize = intArgument(args, "sampleSize", ClientMonitor.DEFAULT_SAMPLE_SIZE);
+      final int interval = intArgument(args, "interval", 2000);
+
+      activeMonitor = new ClientChangeListener() {
+        @Override
+        public void onClientsChanged(
+            ArrayList<ClientScanResult> joined,
+            ArrayList<ClientScanResult> left,
+            ArrayList<ClientScanResult> changed) {
+          if (activeMonitor == this) {
+            final Map<String, Object> event = new HashMap<>();
+            event.put("joined", clientsToList(joined));
+            event.put("left", clientsToList(left));
+            event.put("changed", clientsToList(changed));
+            eventSink.success(event);
+          }
+        }
+      };
+      moWiFiAPManager.startClientMonitor(
+          onlyReachables, reachableTimeout, parallelism, sampleSize, interval, activeMonitor);
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+      activeMonitor = null;
+      moWiFiAPManager.stopClientMonitor();
+    }
+  };
+
+  private static List<Map<String, Object>> clientsToList(List<ClientScanResult> clients) {
+    final List<Map<String, Object>> clientList = new ArrayList<>(clients.size());
+    for (ClientScanResult client : clients) {
+      clientList.add(clientToMap(client));
+    }
+    return clientList;
+  }
+
+  private static Map<String, Object> clientToMap(ClientScanResult client) {
+    final Map<String, Object> clientMap = new HashMap<>();
+    clientMap.put("IPAddr", client.getIpAddr());
+    clientMap.put("HWAddr", client.getHWAddr());
+    clientMap.put("Device", client.getDevice());
+    clientMap.put("isReachable", client.isReachable());
+    return clientMap;
+  }
+
   /**
    * Return whether Wi-Fi AP is enabled or disabled. *** isWifiApEnabled : return
    * {@code true} if
@@ -674,67 +915,110 @@ public class WifiIotPlugin
   }
 
   @Override
-  public void onListen(Object o, EventChannel.EventSink eventSink) {
+  public void onListen(final Object o, final EventChannel.EventSink eventSink) {
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
         && moContext
             .checkSelfPermission(Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
-      if (requestingPermission) {
-        return;
+      if (pendingListen != null) {
+        permissionBroker.cancel(Manifest.permission.ACCESS_FINE_LOCATION, pendingListen);
       }
-      requestingPermission = true;
-      permissionRequestCookie.clear();
-      permissionRequestCookie.add(eventSink);
-      moActivity.requestPermissions(
-          new String[] { Manifest.permission.ACCESS_FINE_LOCATION },
-          PERMISSIONS_REQUEST_CODE_ACCESS_FINE_LOCATION_ON_LISTEN);
-      // actual call will be handled in [onRequestPermissionsResult]
+      pendingListen = new PermissionBroker.Callback() {
+        @Override
+        public void onGranted() {
+          // the stream may have been cancelled, or listened to again, meanwhile
+          if (pendingListen == this) {
+            pendingListen = null;
+            _onListen(o, eventSink);
+          }
+        }
+
+        @Override
+        public void onDenied() {
+          if (pendingListen == this) {
+            pendingListen = null;
+            eventSink.error("WifiIotPlugin.Permission", "Fine location permission denied", null);
+          }
+        }
+      };
+      permissionBroker.request(Manifest.permission.ACCESS_FINE_LOCATION, pendingListen);
     } else {
-      _onListen(eventSink);
+      _onListen(o, eventSink);
     }
   }
 
-  private void _onListen(EventChannel.EventSink eventSink) {
-    receiver = createReceiver(eventSink);
+  private void _onListen(Object arguments, EventChannel.EventSink eventSink) {
+    final Map<?, ?> args = arguments instanceof Map ? (Map<?, ?>) arguments : new HashMap<>();
+    final ScanResultFilter filter;
+    try {
+      filter = ScanResultFilter.fromArguments(args.get("filter"), args.get("fields"));
+    } catch (IllegalArgumentException e) {
+      eventSink.error("Exception", e.getMessage(), null);
+      return;
+    }
+    if (Boolean.TRUE.equals(args.get("delta"))) {
+      final int levelThreshold =
+          intArgument(args, "levelThreshold", ScanResultDelta.DEFAULT_LEVEL_THRESHOLD);
+      final int keyframeInterval =
+          intArgument(args, "keyframeInterval", ScanResultDelta.DEFAULT_KEYFRAME_INTERVAL);
+      receiver = createDeltaReceiver(
+          eventSink, new ScanResultDelta(levelThreshold, keyframeInterval), filter);
+    } else {
+      receiver = createReceiver(eventSink, Boolean.TRUE.equals(args.get("typed")), filter);
+    }
     moContext.registerReceiver(
         receiver, new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
   }
 
   @Override
   public void onCancel(Object o) {
+    if (pendingListen != null) {
+      permissionBroker.cancel(Manifest.permission.ACCESS_FINE_LOCATION, pendingListen);
+      pendingListen = null;
+    }
     if (receiver != null) {
       moContext.unregisterReceiver(receiver);
       receiver = null;
     }
   }
 
-  private BroadcastReceiver createReceiver(final EventChannel.EventSink eventSink) {
+  private BroadcastReceiver createReceiver(
+      final EventChannel.EventSink eventSink, final boolean typed, final ScanResultFilter filter) {
     return new BroadcastReceiver() {
       @Override
       public void onReceive(Context context, Intent intent) {
-        eventSink.success(handleNetworkScanResult().toString());
+        if (typed) {
+          eventSink.success(handleNetworkScanResultTyped(filter));
+        } else {
+          eventSink.success(handleNetworkScanResult(filter).toString());
+        }
       }
     };
   }
 
-  JSONArray handleNetworkScanResult() {
+  /// Emits only what changed since the previous event, see [ScanResultDelta].
+  /// The filter applies, but not its field mask: deltas always carry every field.
+  private BroadcastReceiver createDeltaReceiver(
+      final EventChannel.EventSink eventSink,
+      final ScanResultDelta delta,
+      final ScanResultFilter filter) {
+    return new BroadcastReceiver() {
+      @Override
+      public void onReceive(Context context, Intent intent) {
+        final Map<String, Object> event = delta.next(filter.filter(moWiFi.getScanResults()));
+        if (event != null) {
+          eventSink.success(event);
+        }
+      }
+    };
+  }
+
+  JSONArray handleNetworkScanResult(ScanResultFilter filter) {
     List<ScanResult> results = moWiFi.getScanResults();
     JSONArray wifiArray = new JSONArray();
 
     try {
       for (ScanResult result : results) {
-        JSONObject wifiObject = new JSONObject();
-        if (!result.SSID.equals("")) {
-
-          wifiObject.put("SSID", result.SSID);
-          wifiObject.put("BSSID", result.BSSID);
-          wifiObject.put("capabilities", result.capabilities);
-          wifiObject.put("frequency", result.frequency);
-          wifiObject.put("level", result.level);
-          if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            wifiObject.put("timestamp", result.timestamp);
-          } else {
-            wifiObject.put("timestamp", 0);
-          }
+        if (filter.matches(result)) {
           /// Other fields not added
           // wifiObject.put("operatorFriendlyName", result.operatorFriendlyName);
           // wifiObject.put("venueName", result.venueName);
@@ -742,7 +1026,7 @@ public class WifiIotPlugin
           // wifiObject.put("centerFreq1", result.centerFreq1);
           // wifiObject.put("channelWidth", result.channelWidth);
 
-          wifiArray.put(wifiObject);
+          wifiArray.put(filter.toJson(result));
         }
       }
     } catch (JSONException e) {
@@ -752,35 +1036,201 @@ public class WifiIotPlugin
     }
   }
 
+  /// Same content as [handleNetworkScanResult], as a list of maps that the
+  /// method channel codec encodes natively, skipping the JSON round trip.
+  List<Map<String, Object>> handleNetworkScanResultTyped(ScanResultFilter filter) {
+    List<ScanResult> results = moWiFi.getScanResults();
+    List<Map<String, Object>> wifiList = new ArrayList<>();
+
+    for (ScanResult result : results) {
+      if (filter.matches(result)) {
+        wifiList.add(filter.toMap(result));
+      }
+    }
+    return wifiList;
+  }
+
+  static Map<String, Object> scanResultToMap(ScanResult result) {
+    Map<String, Object> wifiMap = new HashMap<>();
+    wifiMap.put("SSID", result.SSID);
+    wifiMap.put("BSSID", result.BSSID);
+    wifiMap.put("capabilities", result.capabilities);
+    wifiMap.put("capabilityFlags", WifiCapabilities.of(result.capabilities));
+    wifiMap.put("frequency", result.frequency);
+    wifiMap.put("level", result.level);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+      wifiMap.put("timestamp", result.timestamp);
+    } else {
+      wifiMap.put("timestamp", 0);
+    }
+    return wifiMap;
+  }
+
+  /// Same content as [handleNetworkScanResult], encoded column by column by
+  /// [ScanResultColumns]
+  ByteBuffer handleNetworkScanResultColumns() {
+    return ScanResultColumns.encode(moWiFi.getScanResults());
+  }
+
+  /// Replies to any message on [SCAN_COLUMNS_CHANNEL] with the last scan
+  /// results in the columnar layout, or an empty reply if they are not
+  /// available. Does not start a scan.
+  private final BinaryMessenger.BinaryMessageHandler scanColumnsHandler = new BinaryMessenger.BinaryMessageHandler() {
+    @Override
+    public void onMessage(ByteBuffer message, BinaryMessenger.BinaryReply reply) {
+      ByteBuffer columns = null;
+      try {
+        columns = handleNetworkScanResultColumns();
+      } catch (Exception e) {
+        Log.e(WifiIotPlugin.class.getSimpleName(), "Error encoding scan result columns", e);
+      }
+      reply.reply(columns);
+    }
+  };
+
   /// Method to load wifi list into string via Callback. Returns a stringified
-  /// JSONArray
-  private void loadWifiList(final Result poResult) {
+  /// JSONArray, or a list of maps if the "typed" argument is true
+  private void loadWifiList(final MethodCall poCall, final Result poResult) {
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
         && moContext
             .checkSelfPermission(Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
-      if (requestingPermission) {
-        poResult.error(
-            "WifiIotPlugin.Permission", "Only one permission can be requested at a time", null);
+      permissionBroker.request(Manifest.permission.ACCESS_FINE_LOCATION, new PermissionBroker.Callback() {
+        @Override
+        public void onGranted() {
+          loadWifiList(poCall, poResult);
+        }
+
+        @Override
+        public void onDenied() {
+          poResult.error("WifiIotPlugin.Permission", "Fine location permission denied", null);
+        }
+      });
+    } else if (poCall.method.equals("loadTopNetworks")) {
+      _loadTopNetworks(poCall, poResult);
+    } else if (poCall.method.equals("scanWifiList")) {
+      _scanWifiList(poCall, poResult);
+    } else {
+      _loadWifiList(poCall, poResult);
+    }
+  }
+
+  /// Returns the k strongest networks, optionally only the strongest BSSID
+  /// of each SSID, selected natively by [TopNetworks]
+  private void _loadTopNetworks(final MethodCall poCall, final Result poResult) {
+    try {
+      final Integer k = poCall.argument("k");
+      if (k == null) {
+        poResult.error("Error", "k is required", null);
         return;
       }
-      requestingPermission = true;
-      permissionRequestResultCallback = poResult;
-      moActivity.requestPermissions(
-          new String[] { Manifest.permission.ACCESS_FINE_LOCATION },
-          PERMISSIONS_REQUEST_CODE_ACCESS_FINE_LOCATION_LOAD_WIFI_LIST);
-      // actual call will be handled in [onRequestPermissionsResult]
-    } else {
-      _loadWifiList(poResult);
+      final boolean perSsid = "ssid".equals(poCall.argument("groupBy"));
+      final ScanResultFilter filter =
+          ScanResultFilter.fromArguments(poCall.argument("filter"), poCall.argument("fields"));
+      scanScheduler.request();
+      final List<ScanResult> top = TopNetworks.select(moWiFi.getScanResults(), k, perSsid, filter);
+      final List<Map<String, Object>> wifiList = new ArrayList<>(top.size());
+      for (ScanResult result : top) {
+        wifiList.add(filter.toMap(result));
+      }
+      poResult.success(wifiList);
+    } catch (Exception e) {
+      poResult.error("Exception", e.getMessage(), null);
     }
   }
 
-  private void _loadWifiList(final Result poResult) {
+  private void _loadWifiList(final MethodCall poCall, final Result poResult) {
+    // identical arguments give identical results, they can share one read
+    reads.call("loadWifiList" + poCall.arguments, new SingleFlight.Read() {
+      @Override
+      public Object read() {
+        final ScanResultFilter filter =
+            ScanResultFilter.fromArguments(poCall.argument("filter"), poCall.argument("fields"));
+        scanScheduler.request();
+        if (Boolean.TRUE.equals(poCall.argument("typed"))) {
+          return handleNetworkScanResultTyped(filter);
+        } else {
+          return handleNetworkScanResult(filter).toString();
+        }
+      }
+    }, poResult);
+  }
+
+  /// Requests a scan through the [ScanScheduler] and returns the results as
+  /// typed maps, with whether they are newer than the request ("fresh") and
+  /// the age of the newest one. With "wait", waits up to "timeout"
+  /// milliseconds for the results of the scan; without it, or when no scan
+  /// could be started within the throttling budget, returns the last results.
+  private void _scanWifiList(final MethodCall poCall, final Result poResult) {
+    if (!Boolean.TRUE.equals(poCall.argument("wait"))) {
+      reads.call("scanWifiList" + poCall.arguments, new SingleFlight.Read() {
+        @Override
+        public Object read() {
+          final ScanResultFilter filter =
+              ScanResultFilter.fromArguments(poCall.argument("filter"), poCall.argument("fields"));
+          final ScanScheduler.Ticket ticket = scanScheduler.request();
+          return scanResultsOf(filter, ticket, scanScheduler.isFresh(ticket));
+        }
+      }, poResult);
+      return;
+    }
+
+    final ScanResultFilter filter;
     try {
-      moWiFi.startScan();
-      poResult.success(handleNetworkScanResult().toString());
+      filter = ScanResultFilter.fromArguments(poCall.argument("filter"), poCall.argument("fields"));
     } catch (Exception e) {
       poResult.error("Exception", e.getMessage(), null);
+      return;
     }
+    final Integer timeout = poCall.argument("timeout");
+    final Handler handler = new Handler(Looper.getMainLooper());
+    // no thread is parked while the scan runs, the results are read once the
+    // scan index reports it done or the timeout passed
+    executors.read.execute(new Runnable() {
+      @Override
+      public void run() {
+        final ScanScheduler.Ticket ticket = scanScheduler.request();
+        scanScheduler.whenDone(
+            ticket,
+            timeout != null && timeout > 0 ? timeout : DEFAULT_SCAN_WAIT_TIMEOUT,
+            new ScanScheduler.Callback() {
+              @Override
+              public void onDone(final boolean fresh) {
+                executors.read.execute(new Runnable() {
+                  @Override
+                  public void run() {
+                    final Map<String, Object> scan = scanResultsOf(filter, ticket, fresh);
+                    handler.post(new Runnable() {
+                      @Override
+                      public void run() {
+                        poResult.success(scan);
+                      }
+                    });
+                  }
+                });
+              }
+            });
+      }
+    });
+  }
+
+  private Map<String, Object> scanResultsOf(
+      ScanResultFilter filter, ScanScheduler.Ticket ticket, boolean fresh) {
+    final List<ScanResult> results = moWiFi.getScanResults();
+    final List<Map<String, Object>> networks = new ArrayList<>();
+    if (results != null) {
+      for (ScanResult result : results) {
+        if (filter.matches(result)) {
+          networks.add(filter.toMap(result));
+        }
+      }
+    }
+    final Map<String, Object> scan = new HashMap<>();
+    scan.put("networks", networks);
+    scan.put("fresh", fresh);
+    scan.put("age", ScanScheduler.ageOf(results));
+    scan.put("scanStarted", ticket.started);
+    scan.put("throttled", !ticket.isScanning());
+    return scan;
   }
 
   private boolean selectNetwork(final Network network, final ConnectivityManager manager) {
@@ -864,6 +1314,9 @@ public class WifiIotPlugin
 
   /// Get the currently connected WiFi network
   private Network getCurrentWifiNetwork(ConnectivityManager manager) {
+    if (wifiNetworkTracker != null && wifiNetworkTracker.isStarted()) {
+      return wifiNetworkTracker.getNetwork();
+    }
     try {
       Network[] networks = manager.getAllNetworks();
       for (Network network : networks) {
@@ -883,6 +1336,25 @@ public class WifiIotPlugin
     return null;
   }
 
+  /// Sets the log level and the connect event buffer size, arguments left
+  /// out keep their current value
+  private void setDiagnostics(MethodCall poCall, Result poResult) {
+    final Integer level = poCall.argument("level");
+    final Integer eventCapacity = poCall.argument("eventCapacity");
+    if (level != null) {
+      Diagnostics.setLevel(level);
+    }
+    if (eventCapacity != null) {
+      Diagnostics.setEventCapacity(eventCapacity);
+    }
+    poResult.success(null);
+  }
+
+  private void getConnectEvents(MethodCall poCall, Result poResult) {
+    final Boolean clear = poCall.argument("clear");
+    poResult.success(Diagnostics.getEvents(clear != null && clear));
+  }
+
   /// Method to check if wifi is enabled
   private void isEnabled(Result poResult) {
     poResult.success(moWiFi.isWifiEnabled());
@@ -990,7 +1462,7 @@ public class WifiIotPlugin
   }
 
   private void connect(final MethodCall poCall, final Result poResult) {
-    new Thread() {
+    executors.mutating.execute(new Runnable() {
       public void run() {
         String ssid = poCall.argument("ssid");
         String bssid = poCall.argument("bssid");
@@ -1012,7 +1484,7 @@ public class WifiIotPlugin
             isHidden,
             timeoutInSeconds);
       }
-    }.start();
+    });
   }
 
   /// Transform a string based bssid into a MacAdress.
@@ -1053,37 +1525,15 @@ public class WifiIotPlugin
     Boolean isHidden = poCall.argument("is_hidden");
 
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-      final WifiNetworkSuggestion.Builder suggestedNet = new WifiNetworkSuggestion.Builder();
-      suggestedNet.setSsid(ssid);
-      suggestedNet.setIsHiddenSsid(isHidden != null ? isHidden : false);
-      if (bssid != null) {
-        final MacAddress macAddress = macAddressFromBssid(bssid);
-        if (macAddress == null) {
-          poResult.error("Error", "Invalid BSSID representation", "");
-          return;
-        }
-        suggestedNet.setBssid(macAddress);
-      }
-
-      if (security != null && security.toUpperCase().equals("WPA")) {
-        suggestedNet.setWpa2Passphrase(password);
-      } else if (security != null && security.toUpperCase().equals("WEP")) {
-        // WEP is not supported
-        poResult.error(
-            "Error", "WEP is not supported for Android SDK " + Build.VERSION.SDK_INT, "");
+      final ArrayList<WifiNetworkSuggestion> suggestionsList = new ArrayList<WifiNetworkSuggestion>();
+      try {
+        suggestionsList.add(buildAddNetworkSuggestion(ssid, bssid, password, security, isHidden));
+      } catch (IllegalArgumentException e) {
+        poResult.error("Error", e.getMessage(), "");
         return;
       }
 
-      final ArrayList<WifiNetworkSuggestion> suggestionsList = new ArrayList<WifiNetworkSuggestion>();
-      suggestionsList.add(suggestedNet.build());
-
-      Bundle bundle = new Bundle();
-      bundle.putParcelableArrayList(
-          android.provider.Settings.EXTRA_WIFI_NETWORK_LIST, suggestionsList);
-      Intent intent = new Intent(android.provider.Settings.ACTION_WIFI_ADD_NETWORKS);
-      intent.putExtras(bundle);
-      intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-      moContext.startActivity(intent);
+      startAddNetworksActivity(suggestionsList);
 
       poResult.success(null);
     } else {
@@ -1109,26 +1559,24 @@ public class WifiIotPlugin
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
         && moContext
             .checkSelfPermission(Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
-      if (requestingPermission) {
-        poResult.error(
-            "WifiIotPlugin.Permission", "Only one permission can be requested at a time", null);
-        return;
-      }
-      requestingPermission = true;
-      permissionRequestResultCallback = poResult;
-      permissionRequestCookie.clear();
-      permissionRequestCookie.add(poCall);
-      moActivity.requestPermissions(
-          new String[] { Manifest.permission.ACCESS_FINE_LOCATION },
-          PERMISSIONS_REQUEST_CODE_ACCESS_FINE_LOCATION_FIND_AND_CONNECT);
-      // actual call will be handled in [onRequestPermissionsResult]
+      permissionBroker.request(Manifest.permission.ACCESS_FINE_LOCATION, new PermissionBroker.Callback() {
+        @Override
+        public void onGranted() {
+          _findAndConnect(poCall, poResult);
+        }
+
+        @Override
+        public void onDenied() {
+          poResult.error("WifiIotPlugin.Permission", "Fine location permission denied", null);
+        }
+      });
     } else {
       _findAndConnect(poCall, poResult);
     }
   }
 
   private void _findAndConnect(final MethodCall poCall, final Result poResult) {
-    new Thread() {
+    executors.mutating.execute(new Runnable() {
       public void run() {
         String ssid = poCall.argument("ssid");
         String bssid = poCall.argument("bssid");
@@ -1136,61 +1584,64 @@ public class WifiIotPlugin
         Boolean joinOnce = poCall.argument("join_once");
         Boolean withInternet = poCall.argument("with_internet");
         Integer timeoutInSeconds = poCall.argument("timeout_in_seconds");
-
-        Log.d(WifiIotPlugin.class.getSimpleName(), "=== _findAndConnect START ===");
-        Log.d(WifiIotPlugin.class.getSimpleName(), "Target SSID: " + ssid);
-        Log.d(WifiIotPlugin.class.getSimpleName(), "Target BSSID: " + bssid);
-        Log.d(WifiIotPlugin.class.getSimpleName(), "Password provided: " + (password != null && !password.isEmpty()));
-        Log.d(WifiIotPlugin.class.getSimpleName(), "Join once: " + joinOnce);
-        Log.d(WifiIotPlugin.class.getSimpleName(), "With internet: " + withInternet);
-        Log.d(WifiIotPlugin.class.getSimpleName(), "Timeout: " + timeoutInSeconds + " seconds");
+        Integer scanTimeoutInSeconds = poCall.argument("scan_timeout_in_seconds");
+        Integer maxScans = poCall.argument("max_scans");
+
+        if (Diagnostics.isLoggable(Log.DEBUG)) {
+          Log.d(Diagnostics.TAG, "findAndConnect: ssid=" + ssid + ", bssid=" + bssid
+              + ", password=" + (password != null && !password.isEmpty())
+              + ", joinOnce=" + joinOnce + ", withInternet=" + withInternet
+              + ", timeout=" + timeoutInSeconds + "s");
+        }
+        Diagnostics.event("start", ssid, bssid, null);
 
         String security = null;
-        List<ScanResult> results = moWiFi.getScanResults();
-        Log.d(WifiIotPlugin.class.getSimpleName(),
-            "WiFi scan results count: " + (results != null ? results.size() : 0));
-
-        boolean networkFound = false;
-        if (results != null) {
-          for (int i = 0; i < results.size(); i++) {
-            ScanResult result = results.get(i);
-            String resultString = "" + result.SSID;
-            Log.d(WifiIotPlugin.class.getSimpleName(), "Scan result [" + i + "]: SSID='" + resultString + "', BSSID="
-                + result.BSSID + ", capabilities=" + result.capabilities);
-
-            if (ssid.equals(resultString)
-                && (result.BSSID == null || bssid == null || result.BSSID.equals(bssid))) {
-              networkFound = true;
-              security = getSecurityType(result);
-              Log.d(WifiIotPlugin.class.getSimpleName(), "*** NETWORK FOUND ***");
-              Log.d(WifiIotPlugin.class.getSimpleName(),
-                  "Matched network - SSID: " + resultString + ", BSSID: " + result.BSSID);
-              Log.d(WifiIotPlugin.class.getSimpleName(), "Security type detected: " + security);
-              Log.d(WifiIotPlugin.class.getSimpleName(), "Network capabilities: " + result.capabilities);
-
-              if (bssid == null) {
-                bssid = result.BSSID;
-                Log.d(WifiIotPlugin.class.getSimpleName(), "BSSID updated to: " + bssid);
-              }
-              break;
+        final boolean scanUntilSeen = scanTimeoutInSeconds != null && scanTimeoutInSeconds > 0;
+        final ScanIndex.Entry match = scanUntilSeen
+            ? scanUntilSeen(ssid, bssid, scanTimeoutInSeconds * 1000L,
+                maxScans != null && maxScans > 0 ? maxScans : DEFAULT_MAX_SCANS_UNTIL_SEEN)
+            : scanIndex.findForSecurity(ssid, bssid);
+        if (match != null) {
+          security = WifiCapabilities.connectSecurityOf(match.capabilityFlags);
+          if (bssid == null) {
+            bssid = match.bssid;
+          }
+          if (Diagnostics.isLoggable(Log.DEBUG)) {
+            Log.d(Diagnostics.TAG, "findAndConnect: found " + match.bssid + ", level=" + match.level
+                + ", capabilities=" + match.capabilities + ", security=" + security);
+          }
+          Diagnostics.event("found", ssid, match.bssid, match.capabilities);
+        } else {
+          Diagnostics.event("notFound", ssid, bssid, null);
+          final String message;
+          if (scanUntilSeen) {
+            // connecting blind would only time out, the network is not there
+            message = "Network not found by the scans";
+          } else if (password != null && !password.isEmpty()) {
+            // joining it as an open network would ignore the password
+            message = "Network not in the scan results, its security is unknown";
+          } else {
+            message = null;
+          }
+          if (message != null) {
+            if (Diagnostics.isLoggable(Log.WARN)) {
+              Log.w(Diagnostics.TAG, "findAndConnect: '" + ssid + "': " + message);
             }
+            final String details = ssid;
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+              @Override
+              public void run() {
+                poResult.error("NETWORK_NOT_FOUND", message, details);
+              }
+            });
+            return;
           }
-        }
-
-        if (!networkFound) {
-          Log.w(WifiIotPlugin.class.getSimpleName(), "*** NETWORK NOT FOUND ***");
-          Log.w(WifiIotPlugin.class.getSimpleName(), "Target SSID '" + ssid + "' not found in scan results");
-          if (bssid != null) {
-            Log.w(WifiIotPlugin.class.getSimpleName(), "Target BSSID: " + bssid);
+          if (Diagnostics.isLoggable(Log.WARN)) {
+            Log.w(Diagnostics.TAG, "findAndConnect: '" + ssid + "' not in the scan results,"
+                + " connecting without security");
           }
         }
 
-        Log.d(WifiIotPlugin.class.getSimpleName(), "Final connection parameters:");
-        Log.d(WifiIotPlugin.class.getSimpleName(), "  SSID: " + ssid);
-        Log.d(WifiIotPlugin.class.getSimpleName(), "  BSSID: " + bssid);
-        Log.d(WifiIotPlugin.class.getSimpleName(), "  Security: " + security);
-        Log.d(WifiIotPlugin.class.getSimpleName(), "Calling connectTo method...");
-
         connectTo(
             poResult,
             ssid,
@@ -1202,27 +1653,225 @@ public class WifiIotPlugin
             false,
             timeoutInSeconds);
       }
-    }.start();
+    });
   }
 
-  private static String getSecurityType(ScanResult scanResult) {
-    String capabilities = scanResult.capabilities;
-    Log.d(WifiIotPlugin.class.getSimpleName(), "getSecurityType - analyzing capabilities: " + capabilities);
+  /// Connects to the best scanned BSSID among several candidate networks, see
+  /// [CandidateRanker], falling through to the next best one when a BSSID
+  /// turns out unavailable, within one overall timeout.
+  /// Callback returns the network connected to.
+  private void findAndConnectBest(final MethodCall poCall, final Result poResult) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+        && moContext
+            .checkSelfPermission(Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+      permissionBroker.request(Manifest.permission.ACCESS_FINE_LOCATION, new PermissionBroker.Callback() {
+        @Override
+        public void onGranted() {
+          _findAndConnectBest(poCall, poResult);
+        }
 
-    if (capabilities.contains("WPA")
-        || capabilities.contains("WPA2")
-        || capabilities.contains("WPA/WPA2 PSK")) {
-      Log.d(WifiIotPlugin.class.getSimpleName(), "getSecurityType - detected WPA security");
-      return "WPA";
-    } else if (capabilities.contains("WEP")) {
-      Log.d(WifiIotPlugin.class.getSimpleName(), "getSecurityType - detected WEP security");
-      return "WEP";
+        @Override
+        public void onDenied() {
+          poResult.error("WifiIotPlugin.Permission", "Fine location permission denied", null);
+        }
+      });
     } else {
-      Log.d(WifiIotPlugin.class.getSimpleName(), "getSecurityType - no security detected (open network)");
-      return null;
+      _findAndConnectBest(poCall, poResult);
     }
   }
 
+  private void _findAndConnectBest(final MethodCall poCall, final Result poResult) {
+    final List<CandidateRanker.Candidate> candidates;
+    final CandidateRanker.Policy policy;
+    try {
+      candidates = CandidateRanker.candidatesFromArguments(poCall.argument("candidates"));
+      policy = CandidateRanker.Policy.fromArguments(poCall.argument("policy"));
+    } catch (IllegalArgumentException e) {
+      poResult.error("Exception", e.getMessage(), null);
+      return;
+    }
+    final Boolean joinOnce = poCall.argument("join_once");
+    final Boolean withInternet = poCall.argument("with_internet");
+    final Integer timeoutInSeconds = poCall.argument("timeout_in_seconds");
+    final long deadline = SystemClock.elapsedRealtime()
+        + (timeoutInSeconds != null && timeoutInSeconds > 0 ? timeoutInSeconds : 30) * 1000L;
+    executors.mutating.execute(new Runnable() {
+      public void run() {
+        final List<CandidateRanker.Ranked> ranked = candidateRanker.rank(scanIndex, candidates, policy);
+        if (Diagnostics.isLoggable(Log.DEBUG)) {
+          Log.d(Diagnostics.TAG, "findAndConnectBest: " + ranked.size() + " BSSIDs ranked");
+        }
+        if (ranked.isEmpty()) {
+          Diagnostics.event("notFound", null, null, null);
+          new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+              poResult.error("NETWORK_NOT_FOUND", "None of the candidates is in the recent scan results", null);
+            }
+          });
+          return;
+        }
+        new BestConnectAttempts(
+            ranked, policy.maxAttempts, deadline, joinOnce, withInternet, poResult).attempt();
+      }
+    });
+  }
+
+  /// Tries the ranked BSSIDs in order, moving on when one is unavailable or
+  /// lost, until one connects, [maxAttempts] were tried or the deadline
+  /// passed. Each attempt gets an equal share of the remaining time.
+  private class BestConnectAttempts {
+    /// NETWORK_UNAVAILABLE reported earlier than this many milliseconds
+    /// before the attempt's timeout did not come from the timeout
+    private static final long TIMEOUT_SLACK = 1000;
+
+    private final List<CandidateRanker.Ranked> ranked;
+    private final int attempts;
+    private final long deadline;
+    private final Boolean joinOnce;
+    private final Boolean withInternet;
+    private final Result poResult;
+    private int index = 0;
+
+    BestConnectAttempts(
+        List<CandidateRanker.Ranked> ranked,
+        int maxAttempts,
+        long deadline,
+        Boolean joinOnce,
+        Boolean withInternet,
+        Result poResult) {
+      this.ranked = ranked;
+      this.attempts = Math.min(maxAttempts, ranked.size());
+      this.deadline = deadline;
+      this.joinOnce = joinOnce;
+      this.withInternet = withInternet;
+      this.poResult = poResult;
+    }
+
+    /// Runs on the mutating executor
+    void attempt() {
+      final CandidateRanker.Ranked target = ranked.get(index);
+      final long remaining = deadline - SystemClock.elapsedRealtime();
+      final int timeoutInSeconds = (int) Math.max(1, remaining / (attempts - index) / 1000);
+      final long attemptEnd = SystemClock.elapsedRealtime() + timeoutInSeconds * 1000L;
+      if (Diagnostics.isLoggable(Log.DEBUG)) {
+        Log.d(Diagnostics.TAG, "findAndConnectBest: trying " + target.entry.ssid + " at "
+            + target.entry.bssid + ", score=" + target.score + ", timeout=" + timeoutInSeconds + "s");
+      }
+      Diagnostics.event("attempt", target.entry.ssid, target.entry.bssid,
+          Diagnostics.isRecording() ? "score " + target.score : null);
+      connectTo(
+          new Result() {
+            @Override
+            public void success(Object result) {
+              if (Boolean.TRUE.equals(result)) {
+                candidateRanker.recordSuccess(target.entry.bssid);
+                poResult.success(connectedToMap(target, index + 1));
+              } else {
+                failed(target, "NETWORK_UNAVAILABLE", "Network unavailable or connection timeout", null);
+              }
+            }
+
+            @Override
+            public void error(String errorCode, String errorMessage, Object errorDetails) {
+              if ("NETWORK_UNAVAILABLE".equals(errorCode)
+                  && SystemClock.elapsedRealtime() < attemptEnd - TIMEOUT_SLACK) {
+                // the user dismissed the connection dialog: the BSSID did
+                // not fail, and another dialog is not what they asked for
+                poResult.error(errorCode, errorMessage, errorDetails);
+              } else if ("NETWORK_UNAVAILABLE".equals(errorCode) || "NETWORK_LOST".equals(errorCode)) {
+                failed(target, errorCode, errorMessage, errorDetails);
+              } else {
+                poResult.error(errorCode, errorMessage, errorDetails);
+              }
+            }
+
+            @Override
+            public void notImplemented() {
+              poResult.notImplemented();
+            }
+          },
+          target.entry.ssid,
+          target.entry.bssid,
+          target.candidate.password,
+          WifiCapabilities.connectSecurityOf(target.entry.capabilityFlags),
+          joinOnce,
+          withInternet,
+          false,
+          timeoutInSeconds);
+    }
+
+    /// Called on the main thread
+    private void failed(
+        CandidateRanker.Ranked target, String errorCode, String errorMessage, Object errorDetails) {
+      candidateRanker.recordFailure(target.entry.bssid);
+      index++;
+      if (index < attempts && SystemClock.elapsedRealtime() < deadline) {
+        executors.mutating.execute(new Runnable() {
+          public void run() {
+            attempt();
+          }
+        });
+      } else {
+        poResult.error(errorCode, errorMessage, errorDetails);
+      }
+    }
+  }
+
+  private static Map<String, Object> connectedToMap(CandidateRanker.Ranked ranked, int attempts) {
+    final Map<String, Object> connected = new HashMap<>();
+    connected.put("ssid", ranked.entry.ssid);
+    connected.put("bssid", ranked.entry.bssid);
+    connected.put("level", ranked.entry.level);
+    connected.put("frequency", ranked.entry.frequency);
+    connected.put("score", ranked.score);
+    connected.put("attempts", attempts);
+    return connected;
+  }
+
+  /// Scans until [ssid], at [bssid] if given, shows up in the results, at most
+  /// [maxScans] times and for [timeout] milliseconds overall. Each scan
+  /// results broadcast is looked at as soon as it arrives, including those of
+  /// scans started by others. Returns the strongest match, or null.
+  private ScanIndex.Entry scanUntilSeen(String ssid, String bssid, long timeout, int maxScans) {
+    final long deadline = SystemClock.elapsedRealtime() + timeout;
+    ScanIndex.Entry match = scanIndex.find(ssid, bssid);
+    int scans = 0;
+    while (match == null && scans < maxScans) {
+      final long remaining = deadline - SystemClock.elapsedRealtime();
+      if (remaining <= 0) {
+        break;
+      }
+      // a throttled request still waits, other scans may bring the network
+      final ScanScheduler.Ticket ticket = scanScheduler.request();
+      scans++;
+      Diagnostics.event("scan", ssid, bssid, ticket.isScanning() ? null : "throttled");
+      if (!scanIndex.awaitScan(ticket.generation, remaining)) {
+        break;
+      }
+      match = scanIndex.find(ssid, bssid);
+    }
+    return match;
+  }
+
+  /// Whether [ssid], at [bssid] if given, is in the recent scan results
+  private void isSSIDInRange(final MethodCall poCall, final Result poResult) {
+    final String ssid = poCall.argument("ssid");
+    final String bssid = poCall.argument("bssid");
+    reads.call("isSSIDInRange" + poCall.arguments, new SingleFlight.Read() {
+      @Override
+      public Object read() {
+        return scanIndex.find(ssid, bssid) != null;
+      }
+    }, poResult);
+  }
+
+  private void setScanIndexMaxAge(MethodCall poCall, Result poResult) {
+    final Integer maxAge = poCall.argument("maxAge");
+    scanIndex.setMaxAge(maxAge != null && maxAge > 0 ? maxAge : ScanIndex.DEFAULT_MAX_AGE);
+    poResult.success(null);
+  }
+
   /// Use this method to check if the device is currently connected to Wifi.
   private void isConnected(Result poResult) {
     if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
@@ -1230,17 +1879,17 @@ public class WifiIotPlugin
     } else {
       if (moContext
           .checkSelfPermission(Manifest.permission.ACCESS_NETWORK_STATE) != PackageManager.PERMISSION_GRANTED) {
-        if (requestingPermission) {
-          poResult.error(
-              "WifiIotPlugin.Permission", "Only one permission can be requested at a time", null);
-          return;
-        }
-        requestingPermission = true;
-        permissionRequestResultCallback = poResult;
-        moActivity.requestPermissions(
-            new String[] { Manifest.permission.ACCESS_NETWORK_STATE },
-            PERMISSIONS_REQUEST_CODE_ACCESS_NETWORK_STATE_IS_CONNECTED);
-        // actual call will be handled in [onRequestPermissionsResult]
+        permissionBroker.request(Manifest.permission.ACCESS_NETWORK_STATE, new PermissionBroker.Callback() {
+          @Override
+          public void onGranted() {
+            _isConnected(poResult);
+          }
+
+          @Override
+          public void onDenied() {
+            poResult.error("WifiIotPlugin.Permission", "Network state permission denied", null);
+          }
+        });
       } else {
         _isConnected(poResult);
       }
@@ -1248,6 +1897,19 @@ public class WifiIotPlugin
   }
 
   private void _isConnected(Result poResult) {
+    if (wifiNetworkTracker != null && wifiNetworkTracker.isStarted()) {
+      poResult.success(wifiNetworkTracker.isConnected());
+      return;
+    }
+    reads.call("isConnected", new SingleFlight.Read() {
+      @Override
+      public Object read() {
+        return isWifiNetworkConnected();
+      }
+    }, poResult);
+  }
+
+  private boolean isWifiNetworkConnected() {
     ConnectivityManager connManager = (ConnectivityManager) moContext.getSystemService(Context.CONNECTIVITY_SERVICE);
     boolean result = false;
     if (connManager != null) {
@@ -1264,7 +1926,7 @@ public class WifiIotPlugin
       }
     }
 
-    poResult.success(result);
+    return result;
   }
 
   @SuppressWarnings("deprecation")
@@ -1304,52 +1966,272 @@ public class WifiIotPlugin
 
   /// This method will return current ssid
   private void getSSID(Result poResult) {
-    WifiInfo info = moWiFi.getConnectionInfo();
-
-    // This value should be wrapped in double quotes, so we need to unwrap it.
-    String ssid = info.getSSID();
-    if (ssid.startsWith("\"") && ssid.endsWith("\"")) {
-      ssid = ssid.substring(1, ssid.length() - 1);
-    }
+    reads.call("getSSID", new SingleFlight.Read() {
+      @Override
+      public Object read() {
+        WifiInfo info = connectionInfo.get(0);
 
-    poResult.success(ssid);
+        // This value should be wrapped in double quotes, so we need to unwrap it.
+        String ssid = info.getSSID();
+        if (ssid.startsWith("\"") && ssid.endsWith("\"")) {
+          ssid = ssid.substring(1, ssid.length() - 1);
+        }
+        return ssid;
+      }
+    }, poResult);
   }
 
   /// This method will return the basic service set identifier (BSSID) of the
   /// current access point
   private void getBSSID(Result poResult) {
-    WifiInfo info = moWiFi.getConnectionInfo();
-
-    String bssid = info.getBSSID();
+    reads.call("getBSSID", new SingleFlight.Read() {
+      @Override
+      public Object read() {
+        WifiInfo info = connectionInfo.get(0);
 
-    try {
-      poResult.success(bssid.toUpperCase());
-    } catch (Exception e) {
-      poResult.error("Exception", e.getMessage(), null);
-    }
+        String bssid = info.getBSSID();
+        return bssid.toUpperCase();
+      }
+    }, poResult);
   }
 
   /// This method will return current WiFi signal strength
   private void getCurrentSignalStrength(Result poResult) {
-    int linkSpeed = moWiFi.getConnectionInfo().getRssi();
-    poResult.success(linkSpeed);
+    reads.call("getCurrentSignalStrength", new SingleFlight.Read() {
+      @Override
+      public Object read() {
+        return connectionInfo.get(0).getRssi();
+      }
+    }, poResult);
   }
 
   /// This method will return current WiFi frequency
   private void getFrequency(Result poResult) {
-    WifiInfo info = moWiFi.getConnectionInfo();
-    int frequency = 0;
-    if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.LOLLIPOP) {
-      frequency = info.getFrequency();
-    }
-    poResult.success(frequency);
+    reads.call("getFrequency", new SingleFlight.Read() {
+      @Override
+      public Object read() {
+        WifiInfo info = connectionInfo.get(0);
+        int frequency = 0;
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.LOLLIPOP) {
+          frequency = info.getFrequency();
+        }
+        return frequency;
+      }
+    }, poResult);
   }
 
   /// This method will return current IP
   private void getIP(Result poResult) {
-    WifiInfo info = moWiFi.getConnectionInfo();
-    String stringip = longToIP(info.getIpAddress());
-    poResult.success(stringip);
+    reads.call("getIP", new SingleFlight.Read() {
+      @Override
+      public Object read() {
+        WifiInfo info = connectionInfo.get(0);
+        return longToIP(info.getIpAddress());
+      }
+    }, poResult);
+  }
+
+  /// Sets how long, in milliseconds, the result of a coalesced read is reused
+  /// by identical calls, see [SingleFlight]
+  private void setReadCoalescing(MethodCall poCall, Result poResult) {
+    final Integer window = poCall.argument("window");
+    reads.setWindow(window != null ? window : 0);
+    poResult.success(null);
+  }
+
+  /// This method will return the SSID, BSSID, signal strength, link speed,
+  /// frequency, IP, network id and supplicant state of the current connection
+  /// at once. Calls within `window` milliseconds of the previous read share
+  /// its result.
+  private void getConnectionSnapshot(MethodCall poCall, Result poResult) {
+    final Integer window = poCall.argument("window");
+    // the window decides how old a cached WifiInfo may be, it is part of the key
+    reads.call("getConnectionSnapshot" + window, new SingleFlight.Read() {
+      @Override
+      public Object read() {
+        final WifiInfo info = connectionInfo.get(window != null ? window : 0);
+
+        String ssid = info.getSSID();
+        if (ssid != null && ssid.startsWith("\"") && ssid.endsWith("\"")) {
+          ssid = ssid.substring(1, ssid.length() - 1);
+        }
+        final String bssid = info.getBSSID();
+
+        final Map<String, Object> snapshot = new HashMap<>();
+        snapshot.put("ssid", ssid);
+        snapshot.put("bssid", bssid != null ? bssid.toUpperCase() : null);
+        snapshot.put("rssi", info.getRssi());
+        snapshot.put("linkSpeed", info.getLinkSpeed());
+        snapshot.put("frequency",
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP ? info.getFrequency() : 0);
+        snapshot.put("ip", longToIP(info.getIpAddress()));
+        snapshot.put("networkId", info.getNetworkId());
+        snapshot.put("supplicantState", String.valueOf(info.getSupplicantState()));
+        snapshot.put("age", connectionInfo.getAge());
+        return snapshot;
+      }
+    }, poResult);
+  }
+
+
+  /// Suggestion for the "add networks" dialog, throws on a bad BSSID or WEP
+  @RequiresApi(api = Build.VERSION_CODES.R)
+  private WifiNetworkSuggestion buildAddNetworkSuggestion(
+      String ssid, String bssid, String password, String security, Boolean isHidden) {
+    final WifiNetworkSuggestion.Builder suggestedNet = new WifiNetworkSuggestion.Builder();
+    suggestedNet.setSsid(ssid);
+    suggestedNet.setIsHiddenSsid(isHidden != null ? isHidden : false);
+    if (bssid != null) {
+      final MacAddress macAddress = macAddressFromBssid(bssid);
+      if (macAddress == null) {
+        throw new IllegalArgumentException("Invalid BSSID representation");
+      }
+      suggestedNet.setBssid(macAddress);
+    }
+
+    if (security != null && security.toUpperCase().equals("WPA")) {
+      suggestedNet.setWpa2Passphrase(password);
+    } else if (security != null && security.toUpperCase().equals("WEP")) {
+      // WEP is not supported
+      throw new IllegalArgumentException("WEP is not supported for Android SDK " + Build.VERSION.SDK_INT);
+    }
+    return suggestedNet.build();
+  }
+
+  @RequiresApi(api = Build.VERSION_CODES.R)
+  private void startAddNetworksActivity(ArrayList<WifiNetworkSuggestion> suggestionsList) {
+    Bundle bundle = new Bundle();
+    bundle.putParcelableArrayList(
+        android.provider.Settings.EXTRA_WIFI_NETWORK_LIST, suggestionsList);
+    Intent intent = new Intent(android.provider.Settings.ACTION_WIFI_ADD_NETWORKS);
+    intent.putExtras(bundle);
+    intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+    moContext.startActivity(intent);
+  }
+
+  /// Registers several networks at once, see [registerWifiNetwork]. On
+  /// Android 11 and up, all valid networks go in one "add networks" dialog;
+  /// before, the configured networks are listed once and saved once.
+  /// Returns one `{ssid, success, error}` status per network, in order.
+  private void registerWifiNetworks(final MethodCall poCall, final Result poResult) {
+    final List<Map<String, Object>> networks = poCall.argument("networks");
+    if (networks == null) {
+      poResult.error("Error", "No networks were given!", null);
+      return;
+    }
+    final List<Map<String, Object>> statuses = new ArrayList<>(networks.size());
+
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+      final ArrayList<WifiNetworkSuggestion> suggestionsList = new ArrayList<WifiNetworkSuggestion>();
+      for (Map<String, Object> network : networks) {
+        final String ssid = (String) network.get("ssid");
+        String error = null;
+        if (suggestionsList.size() >= MAX_NETWORKS_PER_ADD_NETWORKS_DIALOG) {
+          error = "At most " + MAX_NETWORKS_PER_ADD_NETWORKS_DIALOG + " networks can be added at once";
+        } else {
+          try {
+            suggestionsList.add(buildAddNetworkSuggestion(
+                ssid,
+                (String) network.get("bssid"),
+                (String) network.get("password"),
+                (String) network.get("security"),
+                (Boolean) network.get("is_hidden")));
+          } catch (IllegalArgumentException e) {
+            error = e.getMessage();
+          }
+        }
+        statuses.add(networkStatus(ssid, error == null, error));
+      }
+      if (!suggestionsList.isEmpty()) {
+        startAddNetworksActivity(suggestionsList);
+      }
+    } else {
+      // Deprecated version
+      final List<android.net.wifi.WifiConfiguration> confs = new ArrayList<>(networks.size());
+      for (Map<String, Object> network : networks) {
+        confs.add(generateConfiguration(
+            (String) network.get("ssid"),
+            (String) network.get("bssid"),
+            (String) network.get("password"),
+            (String) network.get("security"),
+            (Boolean) network.get("is_hidden")));
+      }
+      final int[] networkIds = registerWifiNetworksDeprecated(confs);
+      for (int i = 0; i < networkIds.length; i++) {
+        final boolean success = networkIds[i] != -1;
+        statuses.add(networkStatus(
+            (String) networks.get(i).get("ssid"),
+            success,
+            success ? null : "Error updating network configuration"));
+      }
+    }
+    poResult.success(statuses);
+  }
+
+  /// Removes several networks at once, see [removeWifiNetwork], with one
+  /// listing and one save of the configured networks or suggestions.
+  /// Returns one `{ssid, success}` status per SSID prefix, in order.
+  private void removeWifiNetworks(MethodCall poCall, Result poResult) {
+    final List<String> prefixes = poCall.argument("ssids");
+    if (prefixes == null) {
+      poResult.error("Error", "No prefix SSID was given!", null);
+      return;
+    }
+    final boolean[] removed = new boolean[prefixes.size()];
+
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+      // an empty prefix would match any network, skip it
+      final List<String> comparableSSIDs = new ArrayList<>(prefixes.size());
+      final List<Integer> positions = new ArrayList<>(prefixes.size());
+      for (int i = 0; i < prefixes.size(); i++) {
+        if (!prefixes.get(i).isEmpty()) {
+          comparableSSIDs.add('"' + prefixes.get(i)); // Add quotes because wifiConfig.SSID has them
+          positions.add(i);
+        }
+      }
+      final boolean[] results = configuredNetworks.removeFirstWithPrefixes(comparableSSIDs);
+      for (int i = 0; i < results.length; i++) {
+        removed[positions.get(i)] = results[i];
+      }
+    }
+
+    // remove network suggestions
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+      List<WifiNetworkSuggestion> suggestions = moWiFi.getNetworkSuggestions();
+      List<WifiNetworkSuggestion> removeSuggestions = new ArrayList<WifiNetworkSuggestion>();
+      final boolean[] matched = new boolean[prefixes.size()];
+      for (WifiNetworkSuggestion suggestion : suggestions) {
+        boolean remove = false;
+        for (int i = 0; i < matched.length; i++) {
+          if (!prefixes.get(i).isEmpty() && suggestion.getSsid().startsWith(prefixes.get(i))) {
+            matched[i] = true;
+            remove = true;
+          }
+        }
+        if (remove) {
+          removeSuggestions.add(suggestion);
+        }
+      }
+      final boolean success = removeSuggestions.isEmpty()
+          || moWiFi.removeNetworkSuggestions(removeSuggestions) == WifiManager.STATUS_NETWORK_SUGGESTIONS_SUCCESS;
+      for (int i = 0; i < removed.length; i++) {
+        removed[i] = matched[i] && success;
+      }
+    }
+
+    final List<Map<String, Object>> statuses = new ArrayList<>(prefixes.size());
+    for (int i = 0; i < removed.length; i++) {
+      statuses.add(networkStatus(prefixes.get(i), removed[i], null));
+    }
+    poResult.success(statuses);
+  }
+
+  private static Map<String, Object> networkStatus(String ssid, boolean success, String error) {
+    final Map<String, Object> status = new HashMap<>();
+    status.put("ssid", ssid);
+    status.put("success", success);
+    status.put("error", error);
+    return status;
   }
 
   /// This method will remove the WiFi network as per the passed SSID from the
@@ -1362,15 +2244,11 @@ public class WifiIotPlugin
     boolean removed = false;
 
     if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
-      List<android.net.wifi.WifiConfiguration> mWifiConfigList = moWiFi.getConfiguredNetworks();
-      for (android.net.wifi.WifiConfiguration wifiConfig : mWifiConfigList) {
-        String comparableSSID = ('"' + prefix_ssid); // Add quotes because wifiConfig.SSID has them
-        if (wifiConfig.SSID.startsWith(comparableSSID)) {
-          moWiFi.removeNetwork(wifiConfig.networkId);
-          moWiFi.saveConfiguration();
-          removed = true;
-          break;
-        }
+      String comparableSSID = ('"' + prefix_ssid); // Add quotes because wifiConfig.SSID has them
+      android.net.wifi.WifiConfiguration wifiConfig = configuredNetworks.firstWithPrefix(comparableSSID);
+      if (wifiConfig != null) {
+        configuredNetworks.remove(wifiConfig);
+        removed = true;
       }
     }
 
@@ -1396,17 +2274,8 @@ public class WifiIotPlugin
 
     String ssid = poCall.argument("ssid");
 
-    List<android.net.wifi.WifiConfiguration> mWifiConfigList = moWiFi.getConfiguredNetworks();
     String comparableSSID = ('"' + ssid + '"'); // Add quotes because wifiConfig.SSID has them
-    if (mWifiConfigList != null) {
-      for (android.net.wifi.WifiConfiguration wifiConfig : mWifiConfigList) {
-        if (wifiConfig.SSID.equals(comparableSSID)) {
-          poResult.success(true);
-          return;
-        }
-      }
-    }
-    poResult.success(false);
+    poResult.success(configuredNetworks.contains(comparableSSID));
   }
 
   private static String longToIP(int longIp) {
@@ -1438,8 +2307,22 @@ public class WifiIotPlugin
       final Boolean isHidden,
       final Integer timeoutInSeconds) {
     final Handler handler = new Handler(Looper.getMainLooper());
+    // fail fast rather than timing out, enterprise credentials cannot be passed
+    if (security != null && security.toUpperCase().equals("EAP")) {
+      handler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              poResult.error(
+                  "EAP_NOT_SUPPORTED", "Enterprise (EAP) networks are not supported", "EAP_SECURITY");
+            }
+          });
+      return;
+    }
     if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
-      final boolean connected = connectToDeprecated(ssid, bssid, password, security, joinOnce, isHidden);
+      final boolean connected =
+          connectToDeprecated(ssid, bssid, password, security, joinOnce, isHidden, timeoutInSeconds);
+      Diagnostics.event(connected ? "connected" : "failed", ssid, bssid, null);
       handler.post(
           new Runnable() {
             @Override
@@ -1486,6 +2369,10 @@ public class WifiIotPlugin
         // set password
         if (security != null && security.toUpperCase().equals("WPA")) {
           builder.setWpa2Passphrase(password);
+        } else if (security != null && security.toUpperCase().equals("WPA3")) {
+          builder.setWpa3Passphrase(password);
+        } else if (security != null && security.toUpperCase().equals("OWE")) {
+          builder.setIsEnhancedOpen(true);
         }
 
         // remove suggestions if already existing
@@ -1503,7 +2390,10 @@ public class WifiIotPlugin
         }
 
         final int status = moWiFi.addNetworkSuggestions(networkSuggestions);
-        Log.d(WifiIotPlugin.class.getSimpleName(), "Network suggestion status: " + status);
+        if (Diagnostics.isLoggable(Log.DEBUG)) {
+          Log.d(Diagnostics.TAG, "Network suggestion status: " + status);
+        }
+        Diagnostics.event("suggestion", ssid, bssid, Diagnostics.isRecording() ? "status " + status : null);
 
         handler.post(
             new Runnable() {
@@ -1567,6 +2457,12 @@ public class WifiIotPlugin
         // set security
         if (security != null && security.toUpperCase().equals("WPA")) {
           builder.setWpa2Passphrase(password);
+        } else if (security != null && security.toUpperCase().equals("WPA3")) {
+          builder.setWpa3Passphrase(password);
+        } else if (security != null
+            && security.toUpperCase().equals("OWE")
+            && Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+          builder.setIsEnhancedOpen(true);
         }
 
         final NetworkRequest networkRequest = new NetworkRequest.Builder()
@@ -1591,6 +2487,7 @@ public class WifiIotPlugin
               joinedNetwork = network;
               poResult.success(true);
               resultSent = true;
+              Diagnostics.event("available", ssid, bssid, null);
             }
           }
 
@@ -1604,7 +2501,10 @@ public class WifiIotPlugin
               poResult.error("NETWORK_UNAVAILABLE", "Network unavailable or connection timeout",
                   "Timeout: " + timeoutInSeconds + " seconds");
               resultSent = true;
-              Log.d(WifiIotPlugin.class.getSimpleName(), "Network unavailable");
+              if (Diagnostics.isLoggable(Log.DEBUG)) {
+                Log.d(Diagnostics.TAG, "Network unavailable");
+              }
+              Diagnostics.event("unavailable", ssid, bssid, null);
             }
           }
 
@@ -1617,11 +2517,15 @@ public class WifiIotPlugin
             if (!resultSent) {
               poResult.error("NETWORK_LOST", "Network connection lost", "Network disconnected unexpectedly");
               resultSent = true;
-              Log.d(WifiIotPlugin.class.getSimpleName(), "Network connection lost");
+              if (Diagnostics.isLoggable(Log.DEBUG)) {
+                Log.d(Diagnostics.TAG, "Network connection lost");
+              }
+              Diagnostics.event("lost", ssid, bssid, null);
             }
           }
         };
 
+        Diagnostics.event("request", ssid, bssid, security);
         connectivityManager.requestNetwork(
             networkRequest, networkCallback, handler, timeoutInSeconds * 1000);
       }
@@ -1630,29 +2534,43 @@ public class WifiIotPlugin
 
   @SuppressWarnings("deprecation")
   private int registerWifiNetworkDeprecated(android.net.wifi.WifiConfiguration conf) {
+    int updateNetwork = updateOrAddNetworkDeprecated(conf);
+    moWiFi.saveConfiguration();
+    configuredNetworks.invalidate();
+    return updateNetwork;
+  }
+
+  /// Same as [registerWifiNetworkDeprecated] for several networks, listing
+  /// and saving the configured networks once. Returns the network ids, -1
+  /// for the networks that could not be registered.
+  private int[] registerWifiNetworksDeprecated(List<android.net.wifi.WifiConfiguration> confs) {
+    final int[] networkIds = new int[confs.size()];
+    for (int i = 0; i < networkIds.length; i++) {
+      networkIds[i] = updateOrAddNetworkDeprecated(confs.get(i));
+    }
+    moWiFi.saveConfiguration();
+    configuredNetworks.invalidate();
+    return networkIds;
+  }
+
+  private int updateOrAddNetworkDeprecated(android.net.wifi.WifiConfiguration conf) {
     int updateNetwork = -1;
     int registeredNetwork = -1;
 
     /// Remove the existing configuration for this netwrok
-    List<android.net.wifi.WifiConfiguration> mWifiConfigList = moWiFi.getConfiguredNetworks();
-
-    if (mWifiConfigList != null) {
-      for (android.net.wifi.WifiConfiguration wifiConfig : mWifiConfigList) {
-        if (wifiConfig.SSID.equals(conf.SSID)
-            && (wifiConfig.BSSID == null
-                || conf.BSSID == null
-                || wifiConfig.BSSID.equals(conf.BSSID))) {
-          conf.networkId = wifiConfig.networkId;
-          registeredNetwork = wifiConfig.networkId;
-          updateNetwork = moWiFi.updateNetwork(conf);
-        }
+    for (android.net.wifi.WifiConfiguration wifiConfig : configuredNetworks.get(conf.SSID)) {
+      if (wifiConfig.BSSID == null
+          || conf.BSSID == null
+          || wifiConfig.BSSID.equals(conf.BSSID)) {
+        conf.networkId = wifiConfig.networkId;
+        registeredNetwork = wifiConfig.networkId;
+        updateNetwork = moWiFi.updateNetwork(conf);
       }
     }
 
     /// If network not already in configured networks add new network
     if (updateNetwork == -1) {
       updateNetwork = moWiFi.addNetwork(conf);
-      moWiFi.saveConfiguration();
     }
 
     // Try returning last known valid network id
@@ -1677,6 +2595,14 @@ public class WifiIotPlugin
     else
       security = "NONE";
 
+    // WPA3 and OWE cannot be configured before Android 10, the best we can do
+    // is joining transition networks with WPA2 or open
+    if (security.equals("WPA3")) {
+      security = "WPA";
+    } else if (security.equals("OWE")) {
+      security = "NONE";
+    }
+
     if (security.toUpperCase().equals("WPA")) {
 
       /// appropriate ciper is need to set according to security type used,
@@ -1718,7 +2644,8 @@ public class WifiIotPlugin
       String password,
       String security,
       Boolean joinOnce,
-      Boolean isHidden) {
+      Boolean isHidden,
+      Integer timeoutInSeconds) {
     /// Make new configuration
     android.net.wifi.WifiConfiguration conf = generateConfiguration(ssid, bssid, password, security, isHidden);
 
@@ -1732,34 +2659,102 @@ public class WifiIotPlugin
       ssidsToBeRemovedOnExit.add(conf.SSID);
     }
 
-    boolean disconnect = moWiFi.disconnect();
-    if (!disconnect) {
-      return false;
+    // listen before enabling the network, so that no state change is missed
+    final ConnectionWaiter waiter = new ConnectionWaiter(updateNetwork);
+    final IntentFilter filter = new IntentFilter();
+    filter.addAction(WifiManager.SUPPLICANT_STATE_CHANGED_ACTION);
+    filter.addAction(WifiManager.NETWORK_STATE_CHANGED_ACTION);
+    moContext.registerReceiver(waiter, filter);
+    try {
+      boolean disconnect = moWiFi.disconnect();
+      if (!disconnect) {
+        return false;
+      }
+
+      boolean enabled = moWiFi.enableNetwork(updateNetwork, true);
+      if (!enabled)
+        return false;
+
+      // the state may have settled before the receiver got its first broadcast
+      waiter.onConnectionInfo(moWiFi.getConnectionInfo());
+      final int timeout = timeoutInSeconds != null && timeoutInSeconds > 0
+          ? timeoutInSeconds : DEFAULT_DEPRECATED_CONNECT_TIMEOUT_IN_SECONDS;
+      return waiter.await(timeout, TimeUnit.SECONDS);
+    } finally {
+      moContext.unregisterReceiver(waiter);
     }
+  }
 
-    boolean enabled = moWiFi.enableNetwork(updateNetwork, true);
-    if (!enabled)
-      return false;
+  /// Completes successfully as soon as the supplicant reaches COMPLETED on
+  /// [networkId], or fails on an authentication error. COMPLETED on another
+  /// network, e.g. the one connected before, is waited out until the deadline.
+  private class ConnectionWaiter extends BroadcastReceiver {
+    private final int networkId;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final AtomicBoolean connected = new AtomicBoolean();
+
+    ConnectionWaiter(int networkId) {
+      this.networkId = networkId;
+    }
 
-    boolean connected = false;
-    for (int i = 0; i < 20; i++) {
-      WifiInfo currentNet = moWiFi.getConnectionInfo();
-      int networkId = currentNet.getNetworkId();
-      SupplicantState netState = currentNet.getSupplicantState();
+    @Override
+    public void onReceive(Context context, Intent intent) {
+      if (isInitialStickyBroadcast()) {
+        // replayed on registration, it describes the state before disconnect()
+        return;
+      }
+      if (WifiManager.SUPPLICANT_STATE_CHANGED_ACTION.equals(intent.getAction())) {
+        if (intent.getIntExtra(WifiManager.EXTRA_SUPPLICANT_ERROR, 0)
+            == WifiManager.ERROR_AUTHENTICATING) {
+          if (Diagnostics.isLoggable(Log.WARN)) {
+            Log.w(Diagnostics.TAG, "connectToDeprecated: authentication error");
+          }
+          Diagnostics.event("authError", null, null, null);
+          finish(false);
+          return;
+        }
+        final SupplicantState state = intent.getParcelableExtra(WifiManager.EXTRA_NEW_STATE);
+        if (state != SupplicantState.COMPLETED) {
+          return;
+        }
+      } else {
+        final NetworkInfo info = intent.getParcelableExtra(WifiManager.EXTRA_NETWORK_INFO);
+        if (info == null || !info.isConnected()) {
+          return;
+        }
+      }
+      final WifiManager wifi = moWiFi;
+      if (wifi != null) {
+        onConnectionInfo(wifi.getConnectionInfo());
+      }
+    }
 
+    void onConnectionInfo(WifiInfo currentNet) {
+      if (currentNet == null) {
+        return;
+      }
       // Wait for connection to reach state completed
       // to discard false positives like auth error
-      if (networkId != -1 && netState == SupplicantState.COMPLETED) {
-        connected = networkId == updateNetwork;
-        break;
+      if (currentNet.getNetworkId() == networkId
+          && currentNet.getSupplicantState() == SupplicantState.COMPLETED) {
+        finish(true);
       }
-      try {
-        Thread.sleep(500);
-      } catch (InterruptedException ignored) {
-        break;
+    }
+
+    private synchronized void finish(boolean success) {
+      if (done.getCount() > 0) {
+        connected.set(success);
+        done.countDown();
       }
     }
 
-    return connected;
+    boolean await(long timeout, TimeUnit unit) {
+      try {
+        done.await(timeout, unit);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return connected.get();
+    }
   }
 }
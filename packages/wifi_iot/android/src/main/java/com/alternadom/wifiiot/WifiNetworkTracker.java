@@ -0,0 +1,144 @@
+package com.alternadom.wifiiot;
+
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.util.Log;
+import androidx.annotation.RequiresApi;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the set of connected Wi-Fi networks up to date from a long-lived {@link
+ * ConnectivityManager.NetworkCallback}, so that asking whether Wi-Fi is connected, or for a Wi-Fi
+ * network to bind to, is answered from memory instead of querying every network over binder.
+ *
+ * <p>Networks without internet access (e.g. IoT access points) are tracked as well. Callbacks
+ * arrive on a connectivity thread, queries may come from any thread.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+class WifiNetworkTracker {
+  private final ConnectivityManager manager;
+  private final Map<Network, NetworkCapabilities> networks = new ConcurrentHashMap<>();
+  private volatile Network latest;
+  private volatile boolean started;
+
+  private final ConnectivityManager.NetworkCallback callback =
+      new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onAvailable(Network network) {
+          final NetworkCapabilities capabilities = manager.getNetworkCapabilities(network);
+          if (capabilities != null) {
+            networks.put(network, capabilities);
+          }
+          latest = network;
+        }
+
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+          networks.put(network, capabilities);
+          if (latest == null) {
+            latest = network;
+          }
+        }
+
+        @Override
+        public void onLost(Network network) {
+          networks.remove(network);
+          if (network.equals(latest)) {
+            final Iterator<Network> remaining = networks.keySet().iterator();
+            latest = remaining.hasNext() ? remaining.next() : null;
+          }
+        }
+      };
+
+  WifiNetworkTracker(ConnectivityManager manager) {
+    this.manager = manager;
+  }
+
+  /// Starts tracking, returns false if the callback could not be registered,
+  /// in which case callers should query [ConnectivityManager] themselves
+  boolean start() {
+    if (started) {
+      return true;
+    }
+    final NetworkRequest.Builder builder =
+        new NetworkRequest.Builder()
+            .addTransportType(NetworkCapabilities.TRANSPORT_WIFI)
+            // the default request only matches networks with internet access
+            .removeCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+            .removeCapability(NetworkCapabilities.NET_CAPABILITY_NOT_RESTRICTED)
+            .removeCapability(NetworkCapabilities.NET_CAPABILITY_TRUSTED);
+    // NOT_VPN is kept: a VPN running over Wi-Fi must neither be bound to by
+    // forceWifiUsage nor count as a connected Wi-Fi network
+    try {
+      manager.registerNetworkCallback(builder.build(), callback);
+    } catch (RuntimeException e) {
+      Log.e(WifiNetworkTracker.class.getSimpleName(), "Could not track Wi-Fi networks", e);
+      return false;
+    }
+    seed();
+    started = true;
+    return true;
+  }
+
+  void stop() {
+    if (!started) {
+      return;
+    }
+    started = false;
+    try {
+      manager.unregisterNetworkCallback(callback);
+    } catch (RuntimeException e) {
+      Log.e(WifiNetworkTracker.class.getSimpleName(), "", e);
+    }
+    networks.clear();
+    latest = null;
+  }
+
+  boolean isStarted() {
+    return started;
+  }
+
+  /// Whether at least one Wi-Fi network is connected
+  boolean isConnected() {
+    return latest != null;
+  }
+
+  /// A connected Wi-Fi network, the most recent one, or null
+  Network getNetwork() {
+    return latest;
+  }
+
+  NetworkCapabilities getCapabilities(Network network) {
+    return networks.get(network);
+  }
+
+  /// Callbacks for the networks already connected arrive asynchronously, look
+  /// them up once so that queries right after [start] are correct
+  private void seed() {
+    try {
+      for (Network network : manager.getAllNetworks()) {
+        final NetworkCapabilities capabilities = manager.getNetworkCapabilities(network);
+        if (capabilities == null
+            || !capabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)
+            || capabilities.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) {
+          continue;
+        }
+        final NetworkInfo networkInfo = manager.getNetworkInfo(network);
+        if (networkInfo != null && networkInfo.isConnected()) {
+          networks.put(network, capabilities);
+          if (latest == null) {
+            latest = network;
+          }
+        }
+      }
+    } catch (Exception e) {
+      Log.e(WifiNetworkTracker.class.getSimpleName(), "Error listing Wi-Fi networks", e);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package info.whitebyte.hotspotmanager;
+
+/**
+ * Parsed ARP table entries stored column-wise: IPv4 addresses as {@code int} (most significant
+ * octet first), MAC addresses as the low 48 bits of a {@code long} and interned device names.
+ * Instances are reused across parses by {@link ArpTableParser}.
+ */
+public class ArpTable {
+  private int[] ipAddrs = new int[16];
+  private long[] hwAddrs = new long[16];
+  private String[] devices = new String[16];
+  private int size;
+
+  public int size() {
+    return size;
+  }
+
+  public int getIpAddr(int index) {
+    return ipAddrs[index];
+  }
+
+  public long getHWAddr(int index) {
+    return hwAddrs[index];
+  }
+
+  public String getDevice(int index) {
+    return devices[index];
+  }
+
+  void clear() {
+    size = 0;
+  }
+
+  void add(int ipAddr, long hwAddr, String device) {
+    if (size == ipAddrs.length) {
+      final int capacity = size * 2;
+      int[] newIpAddrs = new int[capacity];
+      long[] newHWAddrs = new long[capacity];
+      String[] newDevices = new String[capacity];
+      System.arraycopy(ipAddrs, 0, newIpAddrs, 0, size);
+      System.arraycopy(hwAddrs, 0, newHWAddrs, 0, size);
+      System.arraycopy(devices, 0, newDevices, 0, size);
+      ipAddrs = newIpAddrs;
+      hwAddrs = newHWAddrs;
+      devices = newDevices;
+    }
+    ipAddrs[size] = ipAddr;
+    hwAddrs[size] = hwAddr;
+    devices[size] = device;
+    size++;
+  }
+}
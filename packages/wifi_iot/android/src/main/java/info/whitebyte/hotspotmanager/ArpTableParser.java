@@ -0,0 +1,224 @@
+package info.whitebyte.hotspotmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Byte level parser for the {@code /proc/net/arp} format:
+ *
+ * <pre>
+ * IP address       HW type     Flags       HW address            Mask     Device
+ * 192.168.43.2     0x1         0x2         aa:bb:cc:dd:ee:ff     *        wlan0
+ * </pre>
+ *
+ * Lines are decoded in place from a reusable read buffer, so a parse allocates nothing per line
+ * once the device names have been seen. Lines that do not hold an IPv4 address and a well formed
+ * MAC address (like the header) are skipped, and so are incomplete entries, whose MAC address is
+ * {@code 00:00:00:00:00:00} because the neighbour never answered. Not thread safe.
+ */
+public class ArpTableParser {
+  private static final int DEFAULT_BUFFER_SIZE = 4096;
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private final byte[] buffer;
+  private String[] deviceNames = new String[4];
+  private int deviceCount;
+
+  public ArpTableParser() {
+    this(DEFAULT_BUFFER_SIZE);
+  }
+
+  /** @param bufferSize size of the read buffer, lines longer than it are skipped */
+  public ArpTableParser(int bufferSize) {
+    buffer = new byte[bufferSize];
+  }
+
+  /** Replaces the content of {@code table} with the entries read from {@code source}. */
+  public void parse(ArpTableSource source, ArpTable table) throws IOException {
+    table.clear();
+    final InputStream in = source.open();
+    try {
+      int end = 0; // end of valid bytes in buffer
+      int pos = 0; // next byte to check for a line feed
+      boolean skipLine = false; // current line overflowed the buffer
+      int read;
+      while ((read = in.read(buffer, end, buffer.length - end)) != -1) {
+        end += read;
+        int lineStart = 0;
+        for (; pos < end; pos++) {
+          if (buffer[pos] == '\n') {
+            if (!skipLine) {
+              parseLine(lineStart, pos, table);
+            }
+            skipLine = false;
+            lineStart = pos + 1;
+          }
+        }
+        if (lineStart == 0 && end == buffer.length) {
+          // no line feed in a full buffer, drop the rest of this line
+          skipLine = true;
+          end = 0;
+        } else {
+          end -= lineStart;
+          System.arraycopy(buffer, lineStart, buffer, 0, end);
+        }
+        pos = end;
+      }
+      if (end > 0 && !skipLine) {
+        parseLine(0, end, table);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private void parseLine(int from, int to, ArpTable table) {
+    // IP address
+    int i = skipBlanks(from, to);
+    int ipAddr = 0;
+    int octets = 0;
+    int octet = -1;
+    for (; i < to && !isBlank(buffer[i]); i++) {
+      final byte b = buffer[i];
+      if (b >= '0' && b <= '9') {
+        octet = (octet < 0 ? 0 : octet * 10) + (b - '0');
+        if (octet > 255) {
+          return;
+        }
+      } else if (b == '.' && octet >= 0 && octets < 3) {
+        ipAddr = (ipAddr << 8) | octet;
+        octets++;
+        octet = -1;
+      } else {
+        return;
+      }
+    }
+    if (octets != 3 || octet < 0) {
+      return;
+    }
+    ipAddr = (ipAddr << 8) | octet;
+
+    // HW type, Flags
+    i = skipField(skipBlanks(i, to), to);
+    i = skipField(skipBlanks(i, to), to);
+
+    // HW address
+    i = skipBlanks(i, to);
+    if (skipField(i, to) - i != 17) {
+      return;
+    }
+    long hwAddr = 0;
+    for (int k = 0; k < 17; k++) {
+      final byte b = buffer[i + k];
+      if (k % 3 == 2) {
+        if (b != ':') {
+          return;
+        }
+        continue;
+      }
+      final int digit = hexDigit(b);
+      if (digit < 0) {
+        return;
+      }
+      hwAddr = (hwAddr << 4) | digit;
+    }
+    if (hwAddr == 0) {
+      return;
+    }
+    i += 17;
+
+    // Mask, Device
+    i = skipField(skipBlanks(i, to), to);
+    i = skipBlanks(i, to);
+    final int deviceEnd = skipField(i, to);
+    if (deviceEnd == i) {
+      return;
+    }
+
+    table.add(ipAddr, hwAddr, internDevice(i, deviceEnd));
+  }
+
+  private String internDevice(int from, int to) {
+    final int length = to - from;
+    search:
+    for (int d = 0; d < deviceCount; d++) {
+      final String name = deviceNames[d];
+      if (name.length() != length) {
+        continue;
+      }
+      for (int k = 0; k < length; k++) {
+        if (name.charAt(k) != (char) (buffer[from + k] & 0xff)) {
+          continue search;
+        }
+      }
+      return name;
+    }
+
+    final String name = new String(buffer, from, length, ASCII);
+    if (deviceCount == deviceNames.length) {
+      String[] newDeviceNames = new String[deviceCount * 2];
+      System.arraycopy(deviceNames, 0, newDeviceNames, 0, deviceCount);
+      deviceNames = newDeviceNames;
+    }
+    deviceNames[deviceCount++] = name;
+    return name;
+  }
+
+  private int skipBlanks(int i, int to) {
+    while (i < to && isBlank(buffer[i])) {
+      i++;
+    }
+    return i;
+  }
+
+  private int skipField(int i, int to) {
+    while (i < to && !isBlank(buffer[i])) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isBlank(byte b) {
+    return b == ' ' || b == '\t' || b == '\r';
+  }
+
+  private static int hexDigit(byte b) {
+    if (b >= '0' && b <= '9') {
+      return b - '0';
+    } else if (b >= 'a' && b <= 'f') {
+      return b - 'a' + 10;
+    } else if (b >= 'A' && b <= 'F') {
+      return b - 'A' + 10;
+    }
+    return -1;
+  }
+
+  /** Formats an IPv4 address stored most significant octet first, e.g. {@code 192.168.43.2}. */
+  public static String formatIpAddr(int ipAddr) {
+    return new StringBuilder(15)
+        .append(ipAddr >>> 24)
+        .append('.')
+        .append((ipAddr >>> 16) & 0xff)
+        .append('.')
+        .append((ipAddr >>> 8) & 0xff)
+        .append('.')
+        .append(ipAddr & 0xff)
+        .toString();
+  }
+
+  /** Formats the low 48 bits as a lower case MAC address, e.g. {@code aa:bb:cc:dd:ee:ff}. */
+  public static String formatHWAddr(long hwAddr) {
+    final char[] chars = new char[17];
+    for (int k = 0; k < 6; k++) {
+      final int octet = (int) (hwAddr >>> (40 - 8 * k)) & 0xff;
+      chars[k * 3] = HEX_DIGITS[octet >>> 4];
+      chars[k * 3 + 1] = HEX_DIGITS[octet & 0xf];
+      if (k < 5) {
+        chars[k * 3 + 2] = ':';
+      }
+    }
+    return new String(chars);
+  }
+}
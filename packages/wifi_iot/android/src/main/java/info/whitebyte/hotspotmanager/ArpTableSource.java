@@ -0,0 +1,12 @@
+package info.whitebyte.hotspotmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface ArpTableSource {
+  /**
+   * Opens a new stream over the ARP table, in the {@code /proc/net/arp} text format. The caller
+   * closes the stream.
+   */
+  public InputStream open() throws IOException;
+}
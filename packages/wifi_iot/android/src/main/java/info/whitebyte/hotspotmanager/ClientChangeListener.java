@@ -0,0 +1,18 @@
+package info.whitebyte.hotspotmanager;
+
+import java.util.ArrayList;
+
+public interface ClientChangeListener {
+  /**
+   * Interface called by the client monitor when the set of Hotspot clients changed since the
+   * previous check. Only called when at least one list is not empty.
+   *
+   * @param joined clients seen for the first time, or reachable again
+   * @param left clients gone from the ARP table, or no longer reachable
+   * @param changed clients whose IP address, device or reachability changed
+   */
+  public void onClientsChanged(
+      ArrayList<ClientScanResult> joined,
+      ArrayList<ClientScanResult> left,
+      ArrayList<ClientScanResult> changed);
+}
@@ -0,0 +1,130 @@
+package info.whitebyte.hotspotmanager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks the Hotspot clients between successive ARP table reads, keyed by MAC address. Each {@link
+ * #check()} only probes entries that are new or whose IP address or device changed, plus a
+ * rotating sample of the unchanged ones, so its probing cost follows the churn rather than the
+ * table size. Not thread safe.
+ */
+public class ClientMonitor {
+  public static final int DEFAULT_SAMPLE_SIZE = 4;
+
+  private final ClientScanner scanner;
+  private final boolean onlyReachables;
+  private final int reachableTimeout;
+  private final int parallelism;
+  private final int sampleSize;
+
+  private HashMap<Long, ClientScanResult> known = new HashMap<Long, ClientScanResult>();
+  private int sampleCursor;
+
+  /**
+   * @param onlyReachables {@code true} if unreachable clients count as gone, {@code false} if
+   *     every ARP entry counts as a client
+   * @param reachableTimeout Reachable Timeout in miliseconds, per probe
+   * @param parallelism maximum number of concurrent probes
+   * @param sampleSize number of unchanged entries re-probed per check
+   */
+  public ClientMonitor(
+      ClientScanner scanner,
+      boolean onlyReachables,
+      int reachableTimeout,
+      int parallelism,
+      int sampleSize) {
+    this.scanner = scanner;
+    this.onlyReachables = onlyReachables;
+    this.reachableTimeout = reachableTimeout;
+    this.parallelism = parallelism;
+    this.sampleSize = sampleSize;
+  }
+
+  /**
+   * Re-reads the ARP table and reports the differences with the previous check to {@code
+   * listener}. The first check reports every client as joined.
+   */
+  public void check(ClientChangeListener listener) {
+    final ArpTable entries = scanner.readArpTable();
+    final int count = entries.size();
+
+    final int[] toProbe = new int[count];
+    int probeCount = 0;
+    final int[] unchanged = new int[count];
+    int unchangedCount = 0;
+    for (int i = 0; i < count; i++) {
+      final long hwAddr = entries.getHWAddr(i);
+      final ClientScanResult previous = known.get(hwAddr);
+      if (previous == null
+          || previous.getIpv4Addr() != entries.getIpAddr(i)
+          || !previous.getDevice().equals(entries.getDevice(i))) {
+        toProbe[probeCount++] = i;
+      } else {
+        unchanged[unchangedCount++] = i;
+      }
+    }
+
+    // rotate through the unchanged entries, a few per check
+    final int samples = Math.min(sampleSize, unchangedCount);
+    for (int k = 0; k < samples; k++) {
+      final int u = (sampleCursor + k) % unchangedCount;
+      toProbe[probeCount++] = unchanged[u];
+      unchanged[u] = -1;
+    }
+    if (unchangedCount > 0) {
+      sampleCursor = (sampleCursor + samples) % unchangedCount;
+    }
+
+    final int[] indices = new int[probeCount];
+    System.arraycopy(toProbe, 0, indices, 0, probeCount);
+    final ClientScanResult[] probed =
+        scanner.probe(entries, indices, reachableTimeout, parallelism, 0, false);
+
+    final HashMap<Long, ClientScanResult> current =
+        new HashMap<Long, ClientScanResult>(known.size() + probeCount);
+    for (int u = 0; u < unchangedCount; u++) {
+      if (unchanged[u] >= 0) {
+        final long hwAddr = entries.getHWAddr(unchanged[u]);
+        current.put(hwAddr, known.get(hwAddr));
+      }
+    }
+    for (ClientScanResult client : probed) {
+      current.put(client.getMacAddr(), client);
+    }
+
+    final ArrayList<ClientScanResult> joined = new ArrayList<ClientScanResult>();
+    final ArrayList<ClientScanResult> left = new ArrayList<ClientScanResult>();
+    final ArrayList<ClientScanResult> changed = new ArrayList<ClientScanResult>();
+    for (ClientScanResult client : probed) {
+      final ClientScanResult previous = known.get(client.getMacAddr());
+      final boolean wasMember = previous != null && isMember(previous);
+      final boolean isMember = isMember(client);
+      if (!wasMember && isMember) {
+        joined.add(client);
+      } else if (wasMember && !isMember) {
+        left.add(client);
+      } else if (wasMember
+          && (previous.getIpv4Addr() != client.getIpv4Addr()
+              || !previous.getDevice().equals(client.getDevice())
+              || previous.isReachable() != client.isReachable())) {
+        changed.add(client);
+      }
+    }
+    for (Map.Entry<Long, ClientScanResult> entry : known.entrySet()) {
+      if (!current.containsKey(entry.getKey()) && isMember(entry.getValue())) {
+        left.add(entry.getValue());
+      }
+    }
+    known = current;
+
+    if (!joined.isEmpty() || !left.isEmpty() || !changed.isEmpty()) {
+      listener.onClientsChanged(joined, left, changed);
+    }
+  }
+
+  private boolean isMember(ClientScanResult client) {
+    return !onlyReachables || client.isReachable();
+  }
+}
@@ -0,0 +1,11 @@
+package info.whitebyte.hotspotmanager;
+
+public interface ClientScanListener extends FinishScanListener {
+  /**
+   * Interface called for every client as soon as its reachability verdict is known, before
+   * {@link #onFinishScan(java.util.ArrayList)}. Network operations should not execute on UI thread
+   *
+   * @param client
+   */
+  public void onClientScanned(ClientScanResult client);
+}
@@ -21,6 +21,8 @@ public class ClientScanResult {
   private String HWAddr;
   private String Device;
   private boolean isReachable;
+  private int ipv4Addr;
+  private long macAddr;
 
   public ClientScanResult(String ipAddr, String hWAddr, String device, boolean isReachable) {
     super();
@@ -30,7 +32,22 @@ public class ClientScanResult {
     this.isReachable = isReachable;
   }
 
+  /**
+   * Creates a result from a parsed {@link ArpTable} entry, the address strings are only formatted
+   * when read.
+   */
+  public ClientScanResult(int ipAddr, long hWAddr, String device, boolean isReachable) {
+    super();
+    this.ipv4Addr = ipAddr;
+    this.macAddr = hWAddr;
+    this.Device = device;
+    this.isReachable = isReachable;
+  }
+
   public String getIpAddr() {
+    if (IpAddr == null) {
+      IpAddr = ArpTableParser.formatIpAddr(ipv4Addr);
+    }
     return IpAddr;
   }
 
@@ -38,10 +55,23 @@ public class ClientScanResult {
     IpAddr = ipAddr;
   }
 
+  /** IPv4 address, most significant octet first. Only set for results parsed from the ARP table */
+  public int getIpv4Addr() {
+    return ipv4Addr;
+  }
+
   public String getHWAddr() {
+    if (HWAddr == null) {
+      HWAddr = ArpTableParser.formatHWAddr(macAddr);
+    }
     return HWAddr;
   }
 
+  /** MAC address in the low 48 bits. Only set for results parsed from the ARP table */
+  public long getMacAddr() {
+    return macAddr;
+  }
+
   public void setHWAddr(String hWAddr) {
     HWAddr = hWAddr;
   }
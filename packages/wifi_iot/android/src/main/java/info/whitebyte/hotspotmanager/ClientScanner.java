@@ -0,0 +1,312 @@
+package info.whitebyte.hotspotmanager;
+
+import android.util.Log;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the ARP table and probes every entry for reachability, at most {@code parallelism} at a
+ * time. The calling thread takes part in probing, so a scan makes progress even when the executor
+ * is busy. The whole scan is bounded by one deadline, entries whose probe did not finish in time
+ * are reported as unreachable.
+ */
+public class ClientScanner {
+  public static final int DEFAULT_PARALLELISM = 8;
+  /// Upper bound of the parallelism of a scan, larger values are clamped to it
+  public static final int MAX_PARALLELISM = 16;
+
+  public static final ReachabilityProber INET_ADDRESS_PROBER =
+      new ReachabilityProber() {
+        @Override
+        public boolean isReachable(int ipAddr, int timeout) throws IOException {
+          final byte[] address = {
+            (byte) (ipAddr >>> 24), (byte) (ipAddr >>> 16), (byte) (ipAddr >>> 8), (byte) ipAddr
+          };
+          return InetAddress.getByAddress(address).isReachable(timeout);
+        }
+      };
+
+  private final ArpTableSource arpTableSource;
+  private final ReachabilityProber prober;
+  private final ReachabilityCache cache;
+  private final Executor executor;
+  private final ArpTableParser parser = new ArpTableParser();
+
+  public ClientScanner() {
+    this(new FileArpTableSource(), INET_ADDRESS_PROBER, new ReachabilityCache());
+  }
+
+  public ClientScanner(ArpTableSource arpTableSource, ReachabilityProber prober) {
+    this(arpTableSource, prober, new ReachabilityCache());
+  }
+
+  /**
+   * @param cache verdicts probed by this scanner are stored there, and reused when a scan allows
+   *     it
+   */
+  public ClientScanner(
+      ArpTableSource arpTableSource, ReachabilityProber prober, ReachabilityCache cache) {
+    this(arpTableSource, prober, cache, DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * @param cache verdicts probed by this scanner are stored there, and reused when a scan allows
+   *     it
+   * @param executor runs the probes beyond the first one of each scan
+   */
+  public ClientScanner(
+      ArpTableSource arpTableSource,
+      ReachabilityProber prober,
+      ReachabilityCache cache,
+      Executor executor) {
+    this.arpTableSource = arpTableSource;
+    this.prober = prober;
+    this.cache = cache;
+    this.executor = executor;
+  }
+
+  public ReachabilityCache getReachabilityCache() {
+    return cache;
+  }
+
+  /**
+   * Scans the ARP table, blocking until every probe finished or the scan deadline passed.
+   *
+   * @param onlyReachables {@code false} if the list should contain unreachable (probably
+   *     disconnected) clients, {@code true} otherwise
+   * @param reachableTimeout Reachable Timeout in miliseconds, per probe
+   * @param parallelism maximum number of concurrent probes, {@link #DEFAULT_PARALLELISM} if {@code
+   *     <= 0}, at most {@link #MAX_PARALLELISM}. The executor must have {@code parallelism - 1}
+   *     idle threads for the probes to actually run that concurrently.
+   * @param scanTimeout overall deadline of the scan in miliseconds, derived from the number of
+   *     probe rounds if {@code <= 0}
+   * @return the clients in ARP table order
+   */
+  public ArrayList<ClientScanResult> scan(
+      boolean onlyReachables, int reachableTimeout, int parallelism, int scanTimeout) {
+    return scan(onlyReachables, reachableTimeout, parallelism, scanTimeout, true, null);
+  }
+
+  /**
+   * Same as {@link #scan(boolean, int, int, int)}, additionally reporting every client to {@code
+   * listener} as soon as its verdict is known. Clients still pending at the deadline are reported
+   * unreachable before this method returns. The listener is called from the probe threads, one
+   * call at a time.
+   *
+   * @param useCache {@code false} to probe every client even if a cached verdict is still valid
+   */
+  public ArrayList<ClientScanResult> scan(
+      final boolean onlyReachables,
+      final int reachableTimeout,
+      int parallelism,
+      int scanTimeout,
+      boolean useCache,
+      final ClientScanListener listener) {
+    final ArpTable entries = readArpTable();
+    final ArrayList<ClientScanResult> result = new ArrayList<ClientScanResult>();
+    final int count = entries.size();
+    if (count == 0) {
+      return result;
+    }
+
+    final Verdicts verdicts = new Verdicts(entries, null, onlyReachables, listener);
+    probe(verdicts, reachableTimeout, parallelism, scanTimeout, useCache);
+    for (int i = 0; i < count; i++) {
+      final ClientScanResult client = verdicts.results[i];
+      if (!onlyReachables || client.isReachable()) {
+        result.add(client);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Probes only the given entries of {@code entries}, blocking until every probe finished or the
+   * scan deadline passed.
+   *
+   * @param indices positions in {@code entries} to probe
+   * @param useCache {@code false} to probe every entry even if a cached verdict is still valid
+   * @return the probed clients, aligned with {@code indices}
+   * @see #scan(boolean, int, int, int)
+   */
+  public ClientScanResult[] probe(
+      ArpTable entries,
+      int[] indices,
+      int reachableTimeout,
+      int parallelism,
+      int scanTimeout,
+      boolean useCache) {
+    final Verdicts verdicts = new Verdicts(entries, indices, false, null);
+    if (indices.length > 0) {
+      probe(verdicts, reachableTimeout, parallelism, scanTimeout, useCache);
+    }
+    return verdicts.results;
+  }
+
+  /** Reads the current ARP table. An unreadable table is returned empty. */
+  public ArpTable readArpTable() {
+    final ArpTable entries = new ArpTable();
+    try {
+      synchronized (parser) {
+        parser.parse(arpTableSource, entries);
+      }
+    } catch (IOException e) {
+      Log.e(ClientScanner.class.getSimpleName(), e.toString());
+    }
+    return entries;
+  }
+
+  private void probe(
+      final Verdicts verdicts,
+      final int reachableTimeout,
+      int parallelism,
+      int scanTimeout,
+      boolean useCache) {
+    // answer what we can from the cache, only probe the rest
+    final int[] pending = new int[verdicts.results.length];
+    int count = 0;
+    for (int slot = 0; slot < pending.length; slot++) {
+      final Boolean cached =
+          useCache ? cache.get(verdicts.ipAddr(slot), verdicts.hwAddr(slot)) : null;
+      if (cached != null) {
+        verdicts.report(slot, cached);
+      } else {
+        pending[count++] = slot;
+      }
+    }
+    if (count == 0) {
+      return;
+    }
+
+    if (parallelism <= 0) {
+      parallelism = DEFAULT_PARALLELISM;
+    }
+    parallelism = Math.min(Math.min(parallelism, MAX_PARALLELISM), count);
+    if (scanTimeout <= 0) {
+      // one timeout per probe round, plus one round of slack for scheduling
+      final int rounds = (count + parallelism - 1) / parallelism;
+      scanTimeout = reachableTimeout * (rounds + 1);
+    }
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(scanTimeout);
+
+    final CountDownLatch done = new CountDownLatch(count);
+    final int[] slots = pending;
+    final int total = count;
+    final AtomicInteger next = new AtomicInteger();
+    final Runnable worker =
+        new Runnable() {
+          @Override
+          public void run() {
+            int i;
+            while ((i = next.getAndIncrement()) < total) {
+              final int slot = slots[i];
+              try {
+                final long remaining =
+                    TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                  continue;
+                }
+                boolean isReachable = false;
+                try {
+                  isReachable =
+                      prober.isReachable(
+                          verdicts.ipAddr(slot), (int) Math.min(reachableTimeout, remaining));
+                  cache.put(verdicts.ipAddr(slot), verdicts.hwAddr(slot), isReachable);
+                } catch (Exception e) {
+                  Log.e(ClientScanner.class.getSimpleName(), e.toString());
+                }
+                verdicts.report(slot, isReachable);
+              } finally {
+                done.countDown();
+              }
+            }
+          }
+        };
+    try {
+      for (int i = 1; i < parallelism; i++) {
+        executor.execute(worker);
+      }
+    } catch (RejectedExecutionException e) {
+      // shutting down, probe what we can on this thread
+    }
+    worker.run();
+    try {
+      done.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    verdicts.expirePending();
+  }
+
+  /** Records one verdict per probed entry, the first one wins, and forwards it to the listener. */
+  private static class Verdicts {
+    final ArpTable entries;
+    final int[] indices;
+    final boolean onlyReachables;
+    final ClientScanListener listener;
+    final ClientScanResult[] results;
+
+    Verdicts(
+        ArpTable entries, int[] indices, boolean onlyReachables, ClientScanListener listener) {
+      this.entries = entries;
+      this.indices = indices;
+      this.onlyReachables = onlyReachables;
+      this.listener = listener;
+      this.results = new ClientScanResult[indices != null ? indices.length : entries.size()];
+    }
+
+    int ipAddr(int slot) {
+      return entries.getIpAddr(indices != null ? indices[slot] : slot);
+    }
+
+    long hwAddr(int slot) {
+      return entries.getHWAddr(indices != null ? indices[slot] : slot);
+    }
+
+    synchronized void report(int slot, boolean isReachable) {
+      if (results[slot] != null) {
+        return;
+      }
+      final int index = indices != null ? indices[slot] : slot;
+      final ClientScanResult client =
+          new ClientScanResult(
+              entries.getIpAddr(index),
+              entries.getHWAddr(index),
+              entries.getDevice(index),
+              isReachable);
+      results[slot] = client;
+      if (listener != null && (!onlyReachables || isReachable)) {
+        listener.onClientScanned(client);
+      }
+    }
+
+    synchronized void expirePending() {
+      for (int i = 0; i < results.length; i++) {
+        report(i, false);
+      }
+    }
+  }
+
+  /// Used when no executor is given, idle threads exit after a minute
+  private static final Executor DEFAULT_EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+              Thread thread =
+                  new Thread(runnable, "WifiApManager-probe-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+}
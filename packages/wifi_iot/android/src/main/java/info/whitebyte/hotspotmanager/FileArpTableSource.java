@@ -0,0 +1,25 @@
+package info.whitebyte.hotspotmanager;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Reads the ARP table from a file, {@code /proc/net/arp} by default. */
+public class FileArpTableSource implements ArpTableSource {
+  public static final String PROC_NET_ARP = "/proc/net/arp";
+
+  private final String path;
+
+  public FileArpTableSource() {
+    this(PROC_NET_ARP);
+  }
+
+  public FileArpTableSource(String path) {
+    this.path = path;
+  }
+
+  @Override
+  public InputStream open() throws IOException {
+    return new FileInputStream(path);
+  }
+}
@@ -0,0 +1,64 @@
+package info.whitebyte.hotspotmanager;
+
+import android.util.Log;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * A hidden framework method, looked up by reflection on first use only. A missing method is
+ * remembered too, so unsupported devices fail fast on every later call instead of throwing and
+ * logging again.
+ */
+class HiddenMethod {
+  private final Class<?> owner;
+  private final String name;
+  private final Class<?>[] parameterTypes;
+  private volatile boolean resolved;
+  private volatile Method method;
+
+  HiddenMethod(Class<?> owner, String name, Class<?>... parameterTypes) {
+    this.owner = owner;
+    this.name = name;
+    this.parameterTypes = parameterTypes;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  /** @return {@code true} if the method exists on this device */
+  boolean isAvailable() {
+    return resolve() != null;
+  }
+
+  /**
+   * Invokes the method.
+   *
+   * @throws NoSuchMethodException if the method does not exist on this device
+   * @throws InvocationTargetException if the method threw
+   */
+  Object invoke(Object receiver, Object... args)
+      throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    final Method target = resolve();
+    if (target == null) {
+      throw new NoSuchMethodException(name);
+    }
+    return target.invoke(receiver, args);
+  }
+
+  private Method resolve() {
+    if (!resolved) {
+      synchronized (this) {
+        if (!resolved) {
+          try {
+            method = owner.getMethod(name, parameterTypes);
+          } catch (NoSuchMethodException | SecurityException e) {
+            Log.w(HiddenMethod.class.getSimpleName(), name + " is not available: " + e);
+          }
+          resolved = true;
+        }
+      }
+    }
+    return method;
+  }
+}
@@ -0,0 +1,116 @@
+package info.whitebyte.hotspotmanager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers reachability verdicts per (IP address, MAC address) for a limited time, with separate
+ * time to live for reachable and unreachable verdicts. Holds at most {@code maxSize} entries, the
+ * least recently used one is evicted first. Thread safe.
+ */
+public class ReachabilityCache {
+  public static final int DEFAULT_POSITIVE_TTL = 5000;
+  public static final int DEFAULT_NEGATIVE_TTL = 2000;
+  public static final int DEFAULT_MAX_SIZE = 256;
+
+  private int positiveTtl = DEFAULT_POSITIVE_TTL;
+  private int negativeTtl = DEFAULT_NEGATIVE_TTL;
+  private int maxSize = DEFAULT_MAX_SIZE;
+  private long hits;
+  private long misses;
+
+  private final LinkedHashMap<Key, Verdict> verdicts =
+      new LinkedHashMap<Key, Verdict>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Verdict> eldest) {
+          return size() > maxSize;
+        }
+      };
+
+  /**
+   * @param positiveTtl how long a reachable verdict is reused in miliseconds, {@code 0} disables
+   * @param negativeTtl how long an unreachable verdict is reused in miliseconds, {@code 0} disables
+   * @param maxSize maximum number of remembered verdicts
+   */
+  public synchronized void configure(int positiveTtl, int negativeTtl, int maxSize) {
+    this.positiveTtl = positiveTtl;
+    this.negativeTtl = negativeTtl;
+    this.maxSize = maxSize;
+    verdicts.clear();
+  }
+
+  /** @return the remembered verdict, or {@code null} if there is none or it expired */
+  public synchronized Boolean get(int ipAddr, long hwAddr) {
+    final Key key = new Key(ipAddr, hwAddr);
+    final Verdict verdict = verdicts.get(key);
+    if (verdict != null && System.nanoTime() - verdict.expiresAt < 0) {
+      hits++;
+      return verdict.isReachable;
+    }
+    if (verdict != null) {
+      verdicts.remove(key);
+    }
+    misses++;
+    return null;
+  }
+
+  public synchronized void put(int ipAddr, long hwAddr, boolean isReachable) {
+    final int ttl = isReachable ? positiveTtl : negativeTtl;
+    if (ttl <= 0 || maxSize <= 0) {
+      return;
+    }
+    verdicts.put(
+        new Key(ipAddr, hwAddr),
+        new Verdict(isReachable, System.nanoTime() + ttl * 1000000L));
+  }
+
+  public synchronized void clear() {
+    verdicts.clear();
+  }
+
+  public synchronized int size() {
+    return verdicts.size();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  private static final class Key {
+    final int ipAddr;
+    final long hwAddr;
+
+    Key(int ipAddr, long hwAddr) {
+      this.ipAddr = ipAddr;
+      this.hwAddr = hwAddr;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) o;
+      return ipAddr == other.ipAddr && hwAddr == other.hwAddr;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * ipAddr + (int) (hwAddr ^ (hwAddr >>> 32));
+    }
+  }
+
+  private static final class Verdict {
+    final boolean isReachable;
+    final long expiresAt;
+
+    Verdict(boolean isReachable, long expiresAt) {
+      this.isReachable = isReachable;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package info.whitebyte.hotspotmanager;
+
+import java.io.IOException;
+
+public interface ReachabilityProber {
+  /**
+   * Checks whether a hotspot client answers within the given timeout. Called from probe worker
+   * threads, so implementations must be thread safe.
+   *
+   * @param ipAddr IPv4 address of the client, most significant octet first
+   * @param timeout Reachable Timeout in miliseconds
+   * @return {@code true} if the client answered in time
+   */
+  public boolean isReachable(int ipAddr, int timeout) throws IOException;
+}
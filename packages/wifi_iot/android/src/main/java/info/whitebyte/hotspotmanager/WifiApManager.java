@@ -25,20 +25,73 @@ import android.os.Build;
 import android.os.Handler;
 import android.provider.Settings;
 import android.util.Log;
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
-import java.lang.reflect.Method;
-import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class WifiApManager {
   private final WifiManager mWifiManager;
+  private final HiddenMethod setWifiApEnabledMethod;
+  private final HiddenMethod getWifiApStateMethod;
+  private final HiddenMethod getWifiApConfigurationMethod;
+  private final HiddenMethod setWifiApConfigurationMethod;
+  private final ClientScanner clientScanner;
+  private final ScheduledExecutorService executor;
+  private ScheduledFuture<?> clientMonitorTask;
   private Context context;
 
   public WifiApManager(Context context) {
+    this(context, newDefaultExecutor());
+  }
+
+  /**
+   * @param executor runs client scans, their probes and the client monitor; it is not shut down
+   *     by this class. It should have {@link ClientScanner#MAX_PARALLELISM} threads, fewer limit
+   *     the parallelism of scans.
+   */
+  public WifiApManager(Context context, ScheduledExecutorService executor) {
     this.context = context;
+    this.executor = executor;
     mWifiManager = (WifiManager) this.context.getSystemService(Context.WIFI_SERVICE);
+    final Class<?> wifiManagerClass = mWifiManager.getClass();
+    setWifiApEnabledMethod =
+        new HiddenMethod(
+            wifiManagerClass, "setWifiApEnabled", WifiConfiguration.class, boolean.class);
+    getWifiApStateMethod = new HiddenMethod(wifiManagerClass, "getWifiApState");
+    getWifiApConfigurationMethod = new HiddenMethod(wifiManagerClass, "getWifiApConfiguration");
+    setWifiApConfigurationMethod =
+        new HiddenMethod(wifiManagerClass, "setWifiApConfiguration", WifiConfiguration.class);
+    clientScanner =
+        new ClientScanner(
+            new FileArpTableSource(),
+            ClientScanner.INET_ADDRESS_PROBER,
+            new ReachabilityCache(),
+            executor);
+  }
+
+  private static ScheduledExecutorService newDefaultExecutor() {
+    final ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(
+            ClientScanner.MAX_PARALLELISM,
+            new ThreadFactory() {
+              private final AtomicInteger count = new AtomicInteger();
+
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "WifiApManager-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    executor.setKeepAliveTime(60, TimeUnit.SECONDS);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
   }
 
   /**
@@ -66,6 +119,9 @@ public class WifiApManager {
    * @return {@code true} if the operation succeeds, {@code false} otherwise
    */
   public boolean setWifiApEnabled(WifiConfiguration wifiConfig, boolean enabled) {
+    if (!setWifiApEnabledMethod.isAvailable()) {
+      return false;
+    }
     try {
       // Calling setWifiApEnabled requires MANAGE_WRITE_SETTINGS permissions, so check and request if needed
       showWritePermissionSettings(false);
@@ -74,11 +130,7 @@ public class WifiApManager {
         mWifiManager.setWifiEnabled(false);
       }
 
-      Method method =
-          mWifiManager
-              .getClass()
-              .getMethod("setWifiApEnabled", WifiConfiguration.class, boolean.class);
-      return (Boolean) method.invoke(mWifiManager, wifiConfig, enabled);
+      return (Boolean) setWifiApEnabledMethod.invoke(mWifiManager, wifiConfig, enabled);
     } catch (Exception e) {
       Log.e(this.getClass().toString(), "", e);
       return false;
@@ -92,10 +144,11 @@ public class WifiApManager {
    * @see #isWifiApEnabled()
    */
   public WIFI_AP_STATE getWifiApState() {
+    if (!getWifiApStateMethod.isAvailable()) {
+      return WIFI_AP_STATE.WIFI_AP_STATE_FAILED;
+    }
     try {
-      Method method = mWifiManager.getClass().getMethod("getWifiApState");
-
-      int tmp = ((Integer) method.invoke(mWifiManager));
+      int tmp = ((Integer) getWifiApStateMethod.invoke(mWifiManager));
 
       // Fix for Android 4
       if (tmp >= 10) {
@@ -126,9 +179,11 @@ public class WifiApManager {
    * @return AP details in {@link WifiConfiguration}
    */
   public WifiConfiguration getWifiApConfiguration() {
+    if (!getWifiApConfigurationMethod.isAvailable()) {
+      return null;
+    }
     try {
-      Method method = mWifiManager.getClass().getMethod("getWifiApConfiguration");
-      return (WifiConfiguration) method.invoke(mWifiManager);
+      return (WifiConfiguration) getWifiApConfigurationMethod.invoke(mWifiManager);
     } catch (Exception e) {
       Log.e(this.getClass().toString(), "", e);
       return null;
@@ -141,16 +196,38 @@ public class WifiApManager {
    * @return {@code true} if the operation succeeded, {@code false} otherwise
    */
   public boolean setWifiApConfiguration(WifiConfiguration wifiConfig) {
+    if (!setWifiApConfigurationMethod.isAvailable()) {
+      return false;
+    }
     try {
-      Method method =
-          mWifiManager.getClass().getMethod("setWifiApConfiguration", WifiConfiguration.class);
-      return (Boolean) method.invoke(mWifiManager, wifiConfig);
+      return (Boolean) setWifiApConfigurationMethod.invoke(mWifiManager, wifiConfig);
     } catch (Exception e) {
       Log.e(this.getClass().toString(), "", e);
       return false;
     }
   }
 
+  /**
+   * Tells which hidden Hotspot methods of {@link WifiManager} exist on this device. They are
+   * looked up once, later calls are answered from the cached lookup.
+   *
+   * @return availability keyed by method name: {@code setWifiApEnabled}, {@code getWifiApState},
+   *     {@code getWifiApConfiguration} and {@code setWifiApConfiguration}
+   */
+  public Map<String, Boolean> getHiddenApiAvailability() {
+    final Map<String, Boolean> availability = new HashMap<>();
+    for (HiddenMethod method :
+        new HiddenMethod[] {
+          setWifiApEnabledMethod,
+          getWifiApStateMethod,
+          getWifiApConfigurationMethod,
+          setWifiApConfigurationMethod
+        }) {
+      availability.put(method.getName(), method.isAvailable());
+    }
+    return availability;
+  }
+
   /**
    * Gets a list of the clients connected to the Hotspot, reachable timeout is 300
    *
@@ -174,58 +251,187 @@ public class WifiApManager {
       final boolean onlyReachables,
       final int reachableTimeout,
       final FinishScanListener finishListener) {
+    getClientList(
+        onlyReachables,
+        reachableTimeout,
+        ClientScanner.DEFAULT_PARALLELISM,
+        0,
+        true,
+        finishListener);
+  }
+
+  /**
+   * Gets a list of the clients connected to the Hotspot, probing up to {@code parallelism} clients
+   * at once
+   *
+   * @param onlyReachables {@code false} if the list should contain unreachable (probably
+   *     disconnected) clients, {@code true} otherwise
+   * @param reachableTimeout Reachable Timout in miliseconds
+   * @param parallelism maximum number of concurrent reachability probes
+   * @param scanTimeout overall deadline of the scan in miliseconds, {@code <= 0} derives it from
+   *     the reachable timeout
+   * @param useCache {@code false} to probe every client even if a recent verdict is cached
+   * @param finishListener, Interface called when the scan method finishes
+   */
+  public void getClientList(
+      final boolean onlyReachables,
+      final int reachableTimeout,
+      final int parallelism,
+      final int scanTimeout,
+      final boolean useCache,
+      final FinishScanListener finishListener) {
+    scanClients(
+        onlyReachables,
+        reachableTimeout,
+        parallelism,
+        scanTimeout,
+        useCache,
+        new ClientScanListener() {
+          @Override
+          public void onClientScanned(ClientScanResult client) {}
+
+          @Override
+          public void onFinishScan(ArrayList<ClientScanResult> clients) {
+            finishListener.onFinishScan(clients);
+          }
+        });
+  }
+
+  /**
+   * Scans the clients connected to the Hotspot, reporting each one as soon as its reachability is
+   * known. Both callbacks are delivered on the main thread, {@code onFinishScan} last.
+   *
+   * @param onlyReachables {@code false} if unreachable (probably disconnected) clients should be
+   *     reported too, {@code true} otherwise
+   * @param reachableTimeout Reachable Timout in miliseconds
+   * @param parallelism maximum number of concurrent reachability probes
+   * @param scanTimeout overall deadline of the scan in miliseconds, {@code <= 0} derives it from
+   *     the reachable timeout
+   * @param useCache {@code false} to probe every client even if a recent verdict is cached
+   * @param scanListener, Interface called per client and when the scan method finishes
+   */
+  public void scanClients(
+      final boolean onlyReachables,
+      final int reachableTimeout,
+      final int parallelism,
+      final int scanTimeout,
+      final boolean useCache,
+      final ClientScanListener scanListener) {
+    // Get a handler that can be used to post to the main thread
+    final Handler mainHandler = new Handler(context.getMainLooper());
     Runnable runnable =
         new Runnable() {
           public void run() {
+            final ArrayList<ClientScanResult> result =
+                clientScanner.scan(
+                    onlyReachables,
+                    reachableTimeout,
+                    parallelism,
+                    scanTimeout,
+                    useCache,
+                    new ClientScanListener() {
+                      @Override
+                      public void onClientScanned(final ClientScanResult client) {
+                        mainHandler.post(
+                            new Runnable() {
+                              @Override
+                              public void run() {
+                                scanListener.onClientScanned(client);
+                              }
+                            });
+                      }
 
-            BufferedReader br = null;
-            final ArrayList<ClientScanResult> result = new ArrayList<ClientScanResult>();
+                      @Override
+                      public void onFinishScan(ArrayList<ClientScanResult> clients) {}
+                    });
 
-            try {
-              br = new BufferedReader(new FileReader("/proc/net/arp"));
-              String line;
-              while ((line = br.readLine()) != null) {
-                String[] splitted = line.split(" +");
+            Runnable myRunnable =
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    scanListener.onFinishScan(result);
+                  }
+                };
+            mainHandler.post(myRunnable);
+          }
+        };
 
-                if ((splitted != null) && (splitted.length >= 4)) {
-                  // Basic sanity check
-                  String mac = splitted[3];
+    executor.execute(runnable);
+  }
 
-                  if (mac.matches("..:..:..:..:..:..")) {
-                    boolean isReachable =
-                        InetAddress.getByName(splitted[0]).isReachable(reachableTimeout);
+  /**
+   * Gets the cache of client reachability verdicts shared by client scans and the client monitor.
+   *
+   * @return {@link ReachabilityCache}
+   */
+  public ReachabilityCache getReachabilityCache() {
+    return clientScanner.getReachabilityCache();
+  }
 
-                    if (!onlyReachables || isReachable) {
-                      result.add(
-                          new ClientScanResult(splitted[0], splitted[3], splitted[5], isReachable));
-                    }
-                  }
-                }
-              }
-            } catch (Exception e) {
-              Log.e(this.getClass().toString(), e.toString());
-            } finally {
-              try {
-                br.close();
-              } catch (IOException e) {
-                Log.e(this.getClass().toString(), e.getMessage());
-              }
-            }
+  /**
+   * Starts monitoring the clients connected to the Hotspot, replacing any running monitor. Every
+   * {@code interval} the ARP table is read again and only the differences with the previous read
+   * are reported, on the main thread.
+   *
+   * @param onlyReachables {@code true} if clients that stop answering should be reported as left
+   * @param reachableTimeout Reachable Timout in miliseconds
+   * @param parallelism maximum number of concurrent reachability probes
+   * @param sampleSize number of unchanged clients re-probed per interval
+   * @param interval delay between two checks in miliseconds
+   * @param changeListener, Interface called when clients joined, left or changed
+   */
+  public synchronized void startClientMonitor(
+      boolean onlyReachables,
+      int reachableTimeout,
+      int parallelism,
+      int sampleSize,
+      int interval,
+      final ClientChangeListener changeListener) {
+    stopClientMonitor();
 
-            // Get a handler that can be used to post to the main thread
-            Handler mainHandler = new Handler(context.getMainLooper());
-            Runnable myRunnable =
+    final ClientMonitor monitor =
+        new ClientMonitor(clientScanner, onlyReachables, reachableTimeout, parallelism, sampleSize);
+    final Handler mainHandler = new Handler(context.getMainLooper());
+    final ClientChangeListener mainThreadListener =
+        new ClientChangeListener() {
+          @Override
+          public void onClientsChanged(
+              final ArrayList<ClientScanResult> joined,
+              final ArrayList<ClientScanResult> left,
+              final ArrayList<ClientScanResult> changed) {
+            mainHandler.post(
                 new Runnable() {
                   @Override
                   public void run() {
-                    finishListener.onFinishScan(result);
+                    changeListener.onClientsChanged(joined, left, changed);
                   }
-                };
-            mainHandler.post(myRunnable);
+                });
           }
         };
 
-    Thread mythread = new Thread(runnable);
-    mythread.start();
+    clientMonitorTask =
+        executor.scheduleWithFixedDelay(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  monitor.check(mainThreadListener);
+                } catch (Exception e) {
+                  // an exception would cancel the periodic check
+                  Log.e(WifiApManager.class.getSimpleName(), "", e);
+                }
+              }
+            },
+            0,
+            interval,
+            TimeUnit.MILLISECONDS);
+  }
+
+  /** Stops the client monitor, if running. Pending notifications may still be delivered. */
+  public synchronized void stopClientMonitor() {
+    if (clientMonitorTask != null) {
+      clientMonitorTask.cancel(true);
+      clientMonitorTask = null;
+    }
   }
 }
@@ -0,0 +1,62 @@
+package com.alternadom.wifiiot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.os.SystemClock;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class ScanIndexTest {
+  private static final long MAX_AGE = 120000;
+
+  @Test
+  public void findLeavesOutAgedEntries() {
+    final long now = SystemClock.elapsedRealtime();
+    final ScanIndex index = new ScanIndex(null);
+    index.setMaxAge(MAX_AGE);
+    index.index(
+        Arrays.asList(
+            entry("fresh", "02:00:00:00:00:01", -60, now - 1000),
+            entry("aged", "02:00:00:00:00:02", -50, now - MAX_AGE - 1)));
+
+    assertEquals(1, index.get("fresh").size());
+    assertTrue(index.get("aged").isEmpty());
+    assertNull(index.find("aged", null));
+  }
+
+  @Test
+  public void connectsToAgedEntryWithItsSecurity() {
+    final long now = SystemClock.elapsedRealtime();
+    final ScanIndex index = new ScanIndex(null);
+    index.setMaxAge(MAX_AGE);
+    final ScanIndex.Entry aged = entry("iot", "02:00:00:00:00:01", -55, now - 10 * MAX_AGE);
+    index.index(Arrays.asList(aged));
+
+    final ScanIndex.Entry match = index.findForSecurity("iot", null);
+
+    assertSame(aged, match);
+    assertEquals("WPA", WifiCapabilities.connectSecurityOf(match.capabilityFlags));
+    assertSame(aged, index.findForSecurity("iot", "02:00:00:00:00:01"));
+    assertNull(index.findForSecurity("iot", "02:00:00:00:00:02"));
+    assertNull(index.findForSecurity("other", null));
+  }
+
+  @Test
+  public void securityLookupPrefersFreshEntries() {
+    final long now = SystemClock.elapsedRealtime();
+    final ScanIndex index = new ScanIndex(null);
+    index.setMaxAge(MAX_AGE);
+    final ScanIndex.Entry fresh = entry("iot", "02:00:00:00:00:01", -80, now);
+    index.index(
+        Arrays.asList(entry("iot", "02:00:00:00:00:02", -40, now - 2 * MAX_AGE), fresh));
+
+    assertSame(fresh, index.findForSecurity("iot", null));
+  }
+
+  private static ScanIndex.Entry entry(String ssid, String bssid, int level, long seenAt) {
+    return new ScanIndex.Entry(ssid, bssid, level, 2437, "[WPA2-PSK-CCMP][ESS]", seenAt);
+  }
+}
@@ -0,0 +1,152 @@
+package info.whitebyte.hotspotmanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import org.junit.Test;
+
+public class ArpTableParserTest {
+  private static final String HEADER =
+      "IP address       HW type     Flags       HW address            Mask     Device\n";
+
+  @Test
+  public void parsesAddressesAndDevice() throws IOException {
+    final ArpTable table =
+        parse(
+            HEADER
+                + "192.168.43.2     0x1         0x2         aa:bb:cc:dd:ee:ff     *        wlan0\n"
+                + "10.0.0.255       0x1         0x2         01:23:45:67:89:AB     *        ap0\n");
+
+    assertEquals(2, table.size());
+    assertEquals(0xc0a82b02, table.getIpAddr(0));
+    assertEquals(0xaabbccddeeffL, table.getHWAddr(0));
+    assertEquals("wlan0", table.getDevice(0));
+    assertEquals(0x0a0000ff, table.getIpAddr(1));
+    assertEquals(0x0123456789abL, table.getHWAddr(1));
+    assertEquals("ap0", table.getDevice(1));
+    assertEquals("192.168.43.2", ArpTableParser.formatIpAddr(table.getIpAddr(0)));
+    assertEquals("01:23:45:67:89:ab", ArpTableParser.formatHWAddr(table.getHWAddr(1)));
+  }
+
+  @Test
+  public void skipsMalformedLines() throws IOException {
+    final ArpTable table =
+        parse(
+            HEADER
+                + "192.168.43.2     0x1         0x2         aa:bb:cc:dd:ee        *        wlan0\n"
+                + "192.168.43.3     0x1         0x2         aa:bb:cc:dd:ee:fg     *        wlan0\n"
+                + "192.168.43.4     0x1         0x2         aa-bb-cc-dd-ee-ff     *        wlan0\n"
+                + "192.168.43.5     0x1         0x2         aa:bb:cc:dd:ee:ff:00  *        wlan0\n"
+                + "256.168.43.6     0x1         0x2         aa:bb:cc:dd:ee:ff     *        wlan0\n"
+                + "192.168.43       0x1         0x2         aa:bb:cc:dd:ee:ff     *        wlan0\n"
+                + "192.168..8       0x1         0x2         aa:bb:cc:dd:ee:ff     *        wlan0\n"
+                + "192.168.43.9     0x1         0x2         aa:bb:cc:dd:ee:ff     *\n"
+                + "\n"
+                + "garbage\n"
+                + "192.168.43.10    0x1         0x2         aa:bb:cc:dd:ee:0a     *        wlan0\n");
+
+    assertEquals(1, table.size());
+    assertEquals("192.168.43.10", ArpTableParser.formatIpAddr(table.getIpAddr(0)));
+  }
+
+  @Test
+  public void skipsIncompleteEntries() throws IOException {
+    final ArpTable table =
+        parse(
+            HEADER
+                + "192.168.43.2     0x1         0x0         00:00:00:00:00:00     *        wlan0\n"
+                + "192.168.43.3     0x1         0x2         00:00:00:00:00:01     *        wlan0\n");
+
+    assertEquals(1, table.size());
+    assertEquals(1L, table.getHWAddr(0));
+  }
+
+  @Test
+  public void parsesLinesSplitAcrossBufferRefills() throws IOException {
+    final String text = ClientScannerTest.arpTable(40);
+    final ArpTable expected = parse(text);
+
+    // lines are 78 bytes, a 100 byte buffer holds at most one, fed 7 bytes per read
+    final ArpTable table = new ArpTable();
+    new ArpTableParser(100).parse(new ChunkedArpTableSource(text, 7), table);
+
+    assertEquals(40, expected.size());
+    assertEquals(expected.size(), table.size());
+    for (int i = 0; i < table.size(); i++) {
+      assertEquals(expected.getIpAddr(i), table.getIpAddr(i));
+      assertEquals(expected.getHWAddr(i), table.getHWAddr(i));
+      assertEquals(expected.getDevice(i), table.getDevice(i));
+    }
+  }
+
+  @Test
+  public void skipsLinesLongerThanTheBuffer() throws IOException {
+    final StringBuilder text = new StringBuilder();
+    text.append("192.168.43.2     0x1         0x2         aa:bb:cc:dd:ee:01     *        ");
+    for (int i = 0; i < 200; i++) {
+      text.append('x');
+    }
+    text.append('\n');
+    text.append("192.168.43.3     0x1         0x2         aa:bb:cc:dd:ee:02     *        wlan0\n");
+
+    final ArpTable table = new ArpTable();
+    new ArpTableParser(100).parse(new ChunkedArpTableSource(text.toString(), 13), table);
+
+    assertEquals(1, table.size());
+    assertEquals(0xaabbccddee02L, table.getHWAddr(0));
+  }
+
+  @Test
+  public void parsesLastLineWithoutLineFeed() throws IOException {
+    final ArpTable table =
+        parse(HEADER + "192.168.43.2     0x1         0x2         aa:bb:cc:dd:ee:ff     *   wlan0");
+
+    assertEquals(1, table.size());
+    assertEquals("wlan0", table.getDevice(0));
+  }
+
+  @Test
+  public void reusesTableAndDeviceNames() throws IOException {
+    final ArpTableParser parser = new ArpTableParser();
+    final ArpTable table = new ArpTable();
+    parser.parse(new ChunkedArpTableSource(ClientScannerTest.arpTable(20), 4096), table);
+    final String device = table.getDevice(0);
+    assertSame(device, table.getDevice(19));
+
+    parser.parse(new ChunkedArpTableSource(ClientScannerTest.arpTable(3), 4096), table);
+
+    assertEquals(3, table.size());
+    assertSame(device, table.getDevice(2));
+  }
+
+  private static ArpTable parse(String text) throws IOException {
+    final ArpTable table = new ArpTable();
+    new ArpTableParser().parse(new ChunkedArpTableSource(text, Integer.MAX_VALUE), table);
+    return table;
+  }
+
+  /** Serves a fixed ARP table, at most {@code chunk} bytes per read. */
+  private static class ChunkedArpTableSource implements ArpTableSource {
+    private final byte[] table;
+    private final int chunk;
+
+    ChunkedArpTableSource(String table, int chunk) {
+      this.table = table.getBytes(Charset.forName("US-ASCII"));
+      this.chunk = chunk;
+    }
+
+    @Override
+    public InputStream open() {
+      return new ByteArrayInputStream(table) {
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+          return super.read(b, off, Math.min(len, chunk));
+        }
+      };
+    }
+  }
+}
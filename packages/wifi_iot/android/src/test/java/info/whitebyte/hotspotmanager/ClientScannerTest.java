@@ -0,0 +1,206 @@
+package info.whitebyte.hotspotmanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class ClientScannerTest {
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void probesInRoundsOfParallelism() throws Exception {
+    final int clients = 12;
+    for (int parallelism : new int[] {1, 2, 3, 4, 6, 12}) {
+      final GatedProber prober = new GatedProber();
+      final ClientScanner scanner = newScanner(clients, prober);
+      final Future<ArrayList<ClientScanResult>> scan = scanAsync(scanner, parallelism);
+
+      // let each round of probes finish only once all of them are in flight
+      int rounds = 0;
+      for (int probed = 0; probed < clients; rounds++) {
+        final int expected = Math.min(parallelism, clients - probed);
+        assertTrue(
+            "parallelism " + parallelism + ", round " + rounds,
+            prober.entered.tryAcquire(expected, 10, TimeUnit.SECONDS));
+        prober.released.release(expected);
+        probed += expected;
+      }
+      final ArrayList<ClientScanResult> result = scan.get(10, TimeUnit.SECONDS);
+
+      assertEquals((clients + parallelism - 1) / parallelism, rounds);
+      assertEquals(clients, prober.calls.get());
+      assertEquals("parallelism " + parallelism, parallelism, prober.maxConcurrent.get());
+      assertEquals(clients, result.size());
+      for (ClientScanResult client : result) {
+        assertTrue(client.isReachable());
+      }
+    }
+  }
+
+  @Test
+  public void parallelismIsClampedToMaximum() throws Exception {
+    final int clients = ClientScanner.MAX_PARALLELISM * 2;
+    final GatedProber prober = new GatedProber();
+    final ClientScanner scanner = newScanner(clients, prober);
+    final Future<ArrayList<ClientScanResult>> scan = scanAsync(scanner, 1000);
+
+    assertTrue(prober.entered.tryAcquire(ClientScanner.MAX_PARALLELISM, 10, TimeUnit.SECONDS));
+    prober.released.release(clients);
+    scan.get(10, TimeUnit.SECONDS);
+
+    assertEquals(clients, prober.calls.get());
+    assertEquals(ClientScanner.MAX_PARALLELISM, prober.maxConcurrent.get());
+  }
+
+  @Test
+  public void scanTimeoutReportsPendingClientsUnreachable() {
+    final int clients = 8;
+    final int scanTimeout = 500;
+    final DeadlineProber prober = new DeadlineProber(2);
+    final ClientScanner scanner = newScanner(clients, prober);
+
+    final long start = System.nanoTime();
+    final ArrayList<ClientScanResult> result =
+        scanner.scan(false, 10000, 2, scanTimeout, false, null);
+    final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    // the two answering clients are reachable, the next ones are probed until
+    // the deadline, at most one per probe thread, and the rest never are
+    assertTrue("took " + elapsed + " ms", elapsed >= scanTimeout / 2);
+    assertTrue(prober.maxTimeout.get() <= scanTimeout);
+    assertTrue(prober.calls.get() <= 4);
+    assertEquals(clients, result.size());
+    int reachable = 0;
+    for (ClientScanResult client : result) {
+      if (client.isReachable()) {
+        reachable++;
+      }
+    }
+    assertEquals(2, reachable);
+    assertFalse(result.get(clients - 1).isReachable());
+  }
+
+  private Future<ArrayList<ClientScanResult>> scanAsync(
+      final ClientScanner scanner, final int parallelism) {
+    return executor.submit(
+        new Callable<ArrayList<ClientScanResult>>() {
+          @Override
+          public ArrayList<ClientScanResult> call() {
+            return scanner.scan(false, 1000, parallelism, 60000, false, null);
+          }
+        });
+  }
+
+  private ClientScanner newScanner(int clients, ReachabilityProber prober) {
+    return new ClientScanner(
+        new StringArpTableSource(arpTable(clients)), prober, new ReachabilityCache(), executor);
+  }
+
+  static String arpTable(int clients) {
+    final StringBuilder table =
+        new StringBuilder(
+            "IP address       HW type     Flags       HW address            Mask     Device\n");
+    for (int i = 0; i < clients; i++) {
+      table.append(
+          String.format(
+              "192.168.43.%-3d   0x1         0x2         02:00:00:00:%02x:%02x     *        wlan0\n",
+              i + 2, i >> 8, i & 0xff));
+    }
+    return table.toString();
+  }
+
+  /** Serves a fixed ARP table. */
+  static class StringArpTableSource implements ArpTableSource {
+    private final byte[] table;
+
+    StringArpTableSource(String table) {
+      this.table = table.getBytes(Charset.forName("US-ASCII"));
+    }
+
+    @Override
+    public InputStream open() {
+      return new ByteArrayInputStream(table);
+    }
+  }
+
+  /**
+   * Answers every probe as reachable once the test releases it, and records how many probes were in
+   * flight at once.
+   */
+  private static class GatedProber implements ReachabilityProber {
+    final AtomicInteger calls = new AtomicInteger();
+    final AtomicInteger maxConcurrent = new AtomicInteger();
+    /// One permit per probe that started
+    final Semaphore entered = new Semaphore(0);
+    /// One permit per probe allowed to finish
+    final Semaphore released = new Semaphore(0);
+    private final AtomicInteger concurrent = new AtomicInteger();
+
+    @Override
+    public boolean isReachable(int ipAddr, int timeout) {
+      calls.incrementAndGet();
+      final int now = concurrent.incrementAndGet();
+      int max;
+      while (now > (max = maxConcurrent.get()) && !maxConcurrent.compareAndSet(max, now)) {}
+      try {
+        entered.release();
+        released.acquire();
+        return true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      } finally {
+        concurrent.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Answers the first {@code answering} clients of {@link #arpTable(int)} right away, the others
+   * never: their probes last the whole timeout they are given.
+   */
+  private static class DeadlineProber implements ReachabilityProber {
+    final AtomicInteger calls = new AtomicInteger();
+    final AtomicInteger maxTimeout = new AtomicInteger();
+    private final int answering;
+
+    DeadlineProber(int answering) {
+      this.answering = answering;
+    }
+
+    @Override
+    public boolean isReachable(int ipAddr, int timeout) {
+      calls.incrementAndGet();
+      int max;
+      while (timeout > (max = maxTimeout.get()) && !maxTimeout.compareAndSet(max, timeout)) {}
+      if ((ipAddr & 0xff) - 2 < answering) {
+        return true;
+      }
+      try {
+        Thread.sleep(timeout);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return false;
+    }
+  }
+}
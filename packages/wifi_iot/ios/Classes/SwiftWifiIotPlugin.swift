@@ -254,7 +254,7 @@ public class SwiftWifiIotPlugin: NSObject, FlutterPlugin {
     @available(iOS 11.0, *)
     private func initHotspotConfiguration(ssid: String, passphrase: String?, security: String? = nil) -> NEHotspotConfiguration {
         switch security?.uppercased() {
-            case "WPA":
+            case "WPA", "WPA3":
                 return NEHotspotConfiguration.init(ssid: ssid, passphrase: passphrase!, isWEP: false)
             case "WEP":
                 return NEHotspotConfiguration.init(ssid: ssid, passphrase: passphrase!, isWEP: true)
@@ -2,6 +2,7 @@
 import 'dart:async';
 import 'dart:convert';
 import 'dart:io';
+import 'dart:typed_data';
 
 import 'package:flutter/services.dart';
 
@@ -13,12 +14,78 @@ enum WIFI_AP_STATE {
   WIFI_AP_STATE_FAILED
 }
 
-enum NetworkSecurity { WPA, WEP, NONE }
+/// [WPA3] (SAE) and [OWE] (enhanced open) need Android 10 (Q), or 11 (R)
+/// for [OWE] without internet; before that they fall back to [WPA] and
+/// [NONE] respectively.
+enum NetworkSecurity { WPA, WEP, NONE, WPA3, OWE }
 
 const serializeNetworkSecurityMap = <NetworkSecurity, String>{
   NetworkSecurity.WPA: "WPA",
   NetworkSecurity.WEP: "WEP",
   NetworkSecurity.NONE: "NONE",
+  NetworkSecurity.WPA3: "WPA3",
+  NetworkSecurity.OWE: "OWE",
+};
+
+/// Bits of [WifiNetwork.capabilityFlags], parsed from
+/// [WifiNetwork.capabilities]. Android only.
+class WifiCapabilityFlags {
+  // protocols
+  static const int WEP = 1;
+  static const int WPA = 1 << 1;
+  static const int RSN = 1 << 2;
+
+  // key managements
+  static const int PSK = 1 << 4;
+  static const int SAE = 1 << 5;
+  static const int OWE = 1 << 6;
+  static const int EAP = 1 << 7;
+  static const int EAP_SUITE_B = 1 << 8;
+  static const int FT = 1 << 9;
+  static const int OWE_TRANSITION = 1 << 10;
+
+  // ciphers
+  static const int CCMP = 1 << 12;
+  static const int TKIP = 1 << 13;
+  static const int GCMP = 1 << 14;
+
+  // flags
+  static const int WPS = 1 << 16;
+  static const int ESS = 1 << 17;
+  static const int IBSS = 1 << 18;
+
+  /// Protected management frames capable
+  static const int PMF_CAPABLE = 1 << 19;
+
+  /// Protected management frames required
+  static const int PMF_REQUIRED = 1 << 20;
+}
+
+/// How [WiFiForIoTPlugin.loadTopNetworks] groups scan results
+enum NetworkGroupBy {
+  /// Every BSSID is a candidate
+  BSSID,
+
+  /// Only the strongest BSSID of each SSID is a candidate
+  SSID
+}
+
+const serializeNetworkGroupByMap = <NetworkGroupBy, String>{
+  NetworkGroupBy.BSSID: "bssid",
+  NetworkGroupBy.SSID: "ssid",
+};
+
+/// Minimum level of the plugin's own Android log messages
+enum DiagnosticsLevel { VERBOSE, DEBUG, INFO, WARN, ERROR, OFF }
+
+/// Matching `android.util.Log` priorities
+const serializeDiagnosticsLevelMap = <DiagnosticsLevel, int>{
+  DiagnosticsLevel.VERBOSE: 2,
+  DiagnosticsLevel.DEBUG: 3,
+  DiagnosticsLevel.INFO: 4,
+  DiagnosticsLevel.WARN: 5,
+  DiagnosticsLevel.ERROR: 6,
+  DiagnosticsLevel.OFF: 8,
 };
 
 /// WiFi connection error codes
@@ -67,6 +134,9 @@ enum WiFiConnectionError {
 
   /// Network unavailable
   NETWORK_UNAVAILABLE,
+
+  /// Enterprise (EAP) networks are not supported
+  EAP_NOT_SUPPORTED,
 }
 
 /// WiFi connection result containing success status and error information
@@ -124,6 +194,9 @@ class WiFiConnectionResult {
       case 'WEP_NOT_SUPPORTED':
         errorCode = WiFiConnectionError.WEP_NOT_SUPPORTED;
         break;
+      case 'EAP_NOT_SUPPORTED':
+        errorCode = WiFiConnectionError.EAP_NOT_SUPPORTED;
+        break;
       case 'INVALID_BSSID':
         errorCode = WiFiConnectionError.INVALID_BSSID;
         break;
@@ -183,6 +256,13 @@ class WiFiConnectionResult {
 }
 
 const MethodChannel _channel = const MethodChannel('wifi_iot');
+const BasicMessageChannel<ByteData> _scanColumnsChannel =
+    const BasicMessageChannel<ByteData>(
+        'plugins.wififlutter.io/wifi_scan_columns', const BinaryCodec());
+const EventChannel _clientListEventChannel =
+    const EventChannel('plugins.wififlutter.io/wifi_ap_clients');
+const EventChannel _clientChangesEventChannel =
+    const EventChannel('plugins.wififlutter.io/wifi_ap_client_changes');
 @Deprecated(
     "This is discontinued, switch to new `wifi_scan` plugin by WiFiFlutter. "
     "Check - https://pub.dev/packages/wifi_scan")
@@ -202,6 +282,25 @@ class WiFiForIoTPlugin {
     return bResult != null && bResult;
   }
 
+  /// Returns which hidden Android WiFi AP methods are available on this
+  /// device, keyed by name: `setWifiApEnabled`, `getWifiApState`,
+  /// `getWifiApConfiguration` and `setWifiApConfiguration`.
+  ///
+  /// Methods that are not available make the matching WiFi AP calls fail
+  /// right away. Android only.
+  static Future<Map<String, bool>> getWiFiAPApiAvailability() async {
+    final Map<String, String> htArguments = Map();
+    Map<String, bool> htResult = <String, bool>{};
+    try {
+      final Map<dynamic, dynamic>? result =
+          await _channel.invokeMethod('getWiFiAPApiAvailability', htArguments);
+      if (result != null) htResult = Map<String, bool>.from(result);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+    return htResult;
+  }
+
   /// Enable or Disable WiFi
   ///
   /// Wifi API changes for Android SDK >= 29, restricts certain behaviour:
@@ -278,12 +377,26 @@ class WiFiForIoTPlugin {
   }
 
   /// Get WiFi AP clients
+  ///
+  /// @param [parallelism] Maximum number of clients probed for reachability at
+  ///   the same time, at most 16; larger values are clamped.
+  ///
+  /// @param [scanTimeout] Overall deadline of the scan in milliseconds, clients
+  ///   not probed in time are reported as unreachable. When `0`, it is derived
+  ///   from [reachableTimeout] and [parallelism].
+  ///
+  /// @param [useCache] Whether recent reachability verdicts can be reused
+  ///   instead of probing again, see [setClientReachabilityCache].
   @Deprecated("This is will only work with < Android SDK 26.")
   static Future<List<APClient>> getClientList(
-      bool onlyReachables, int reachableTimeout) async {
+      bool onlyReachables, int reachableTimeout,
+      {int parallelism = 8, int scanTimeout = 0, bool useCache = true}) async {
     final Map<String, Object> htArguments = Map();
     htArguments["onlyReachables"] = onlyReachables;
     htArguments["reachableTimeout"] = reachableTimeout;
+    htArguments["parallelism"] = parallelism;
+    htArguments["scanTimeout"] = scanTimeout;
+    htArguments["useCache"] = useCache;
     String? sResult;
     List<APClient> htResult = <APClient>[];
     try {
@@ -295,6 +408,112 @@ class WiFiForIoTPlugin {
     return htResult;
   }
 
+  /// Stream WiFi AP clients as soon as their reachability is known.
+  ///
+  /// Takes the same arguments as `getClientList`, which this only works with
+  /// < Android SDK 26 too. Unlike `getClientList`, clients are not delivered in
+  /// ARP table order, but as their probes finish. The stream closes when the
+  /// scan completes. Only one client stream can be listened to at a time.
+  static Stream<APClient> streamClientList(
+      bool onlyReachables, int reachableTimeout,
+      {int parallelism = 8, int scanTimeout = 0, bool useCache = true}) {
+    final Map<String, Object> htArguments = Map();
+    htArguments["onlyReachables"] = onlyReachables;
+    htArguments["reachableTimeout"] = reachableTimeout;
+    htArguments["parallelism"] = parallelism;
+    htArguments["scanTimeout"] = scanTimeout;
+    htArguments["useCache"] = useCache;
+    return _clientListEventChannel
+        .receiveBroadcastStream(htArguments)
+        .takeWhile((dynamic event) => event["type"] != "complete")
+        .map((dynamic event) =>
+            APClient.fromJson(Map<String, dynamic>.from(event)));
+  }
+
+  /// Configure the cache of WiFi AP client reachability verdicts, and clear it.
+  ///
+  /// Reachable verdicts are reused for [positiveTtl] milliseconds, unreachable
+  /// ones for [negativeTtl] milliseconds, `0` disables either. At most
+  /// [maxSize] verdicts are kept, the least recently used are evicted first.
+  static Future<void> setClientReachabilityCache(
+      {int positiveTtl = 5000,
+      int negativeTtl = 2000,
+      int maxSize = 256}) async {
+    final Map<String, int> htArguments = Map();
+    htArguments["positiveTtl"] = positiveTtl;
+    htArguments["negativeTtl"] = negativeTtl;
+    htArguments["maxSize"] = maxSize;
+    try {
+      await _channel.invokeMethod('setClientReachabilityCache', htArguments);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+  }
+
+  /// Returns the `hits`, `misses` and `size` of the WiFi AP client
+  /// reachability cache.
+  static Future<Map<String, int>> getClientReachabilityCacheStats() async {
+    final Map<String, String> htArguments = Map();
+    Map<String, int> htResult = <String, int>{};
+    try {
+      final Map<dynamic, dynamic>? result = await _channel.invokeMethod(
+          'getClientReachabilityCacheStats', htArguments);
+      if (result != null) htResult = Map<String, int>.from(result);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+    return htResult;
+  }
+
+  /// Returns the state of the plugin worker threads. Android only.
+  ///
+  /// Has one entry per lane, `mutating` (connections, one at a time), `read`
+  /// (read-only calls) and `probe` (client scans and probes), each with
+  /// `queued`, `active`,
+  /// `submitted` and `completed` task counts and `avgWaitMs`, `maxWaitMs`
+  /// and `avgRunMs` latencies.
+  static Future<Map<String, Map<String, num>>> getExecutorStats() async {
+    final Map<String, String> htArguments = Map();
+    Map<String, Map<String, num>> htResult = <String, Map<String, num>>{};
+    try {
+      final Map<dynamic, dynamic>? result =
+          await _channel.invokeMethod('getExecutorStats', htArguments);
+      if (result != null) {
+        result.forEach((dynamic lane, dynamic stats) {
+          htResult[lane] = Map<String, num>.from(stats);
+        });
+      }
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+    return htResult;
+  }
+
+  /// Monitor WiFi AP clients joining and leaving.
+  ///
+  /// Every [interval] milliseconds the ARP table is read again, and only the
+  /// clients that joined, left or changed since the previous check are
+  /// emitted. The first event lists every current client as joined. New and
+  /// changed entries are probed for reachability, plus [sampleSize] unchanged
+  /// ones per check in rotation. With [onlyReachables], clients that stop
+  /// answering are reported as left.
+  ///
+  /// This only works with < Android SDK 26, like `getClientList`. Only one
+  /// monitor stream can be listened to at a time.
+  static Stream<APClientChanges> monitorClientList(
+      bool onlyReachables, int reachableTimeout,
+      {int interval = 2000, int sampleSize = 4, int parallelism = 8}) {
+    final Map<String, Object> htArguments = Map();
+    htArguments["onlyReachables"] = onlyReachables;
+    htArguments["reachableTimeout"] = reachableTimeout;
+    htArguments["interval"] = interval;
+    htArguments["sampleSize"] = sampleSize;
+    htArguments["parallelism"] = parallelism;
+    return _clientChangesEventChannel
+        .receiveBroadcastStream(htArguments)
+        .map((dynamic event) => APClientChanges.fromMap(event));
+  }
+
   /// Set WiFi AP Configuaration
   @Deprecated("This is will only work with < Android SDK 26.")
   static void setWiFiAPConfiguration(Object poWiFiConfig) async {
@@ -369,30 +588,200 @@ class WiFiForIoTPlugin {
     return _onWifiScanResultReady!;
   }
 
+  /// Scan results as they become available.
+  ///
+  /// @param [typedPayload] If true, results are sent as lists of maps encoded
+  ///   natively by the platform channel, instead of a JSON string that has to
+  ///   be parsed again. Faster for long result lists.
+  /// @param [filter] Only results matching it are sent, filtered natively.
+  /// @param [fields] Keys of [WifiNetwork.toJson] to send, all by default;
+  ///   the other fields are left null.
+  ///
+  /// Only one scan result stream can be listened to at a time.
   @Deprecated(
       "This is discontinued, switch to new `wifi_scan` plugin by WiFiFlutter. "
       "Check - https://pub.dev/packages/wifi_scan")
-  static Future<List<WifiNetwork>>? _loadWifiList() async {
-    final Map<String, String> htArguments = Map();
-    String? sResult;
+  static Stream<List<WifiNetwork>> scanResultStream(
+      {bool typedPayload = false, WifiScanFilter? filter, Set<String>? fields}) {
+    final Map<String, dynamic> htArguments = Map();
+    htArguments["typed"] = typedPayload;
+    htArguments["filter"] = filter?.toMap();
+    htArguments["fields"] = fields?.toList();
+    return _eventChannel
+        .receiveBroadcastStream(htArguments)
+        .map((dynamic event) => WifiNetwork.parseAny(event));
+  }
+
+  /// Scan result changes as they become available.
+  ///
+  /// The first event, and then one event every [keyframeInterval], is a
+  /// keyframe holding every network. Other events only hold the networks
+  /// added, changed or removed since the previous one; events with nothing
+  /// in them are not sent. Use [WifiScanDelta.apply] to keep a full list.
+  ///
+  /// @param [levelThreshold] Minimum change of the level, in dBm, for a
+  ///   network to be reported as changed.
+  /// @param [filter] Only networks matching it are tracked.
+  ///
+  /// Only one scan result stream can be listened to at a time.
+  @Deprecated(
+      "This is discontinued, switch to new `wifi_scan` plugin by WiFiFlutter. "
+      "Check - https://pub.dev/packages/wifi_scan")
+  static Stream<WifiScanDelta> scanResultDeltaStream(
+      {int levelThreshold = 5,
+      int keyframeInterval = 10,
+      WifiScanFilter? filter}) {
+    final Map<String, dynamic> htArguments = Map();
+    htArguments["delta"] = true;
+    htArguments["filter"] = filter?.toMap();
+    htArguments["levelThreshold"] = levelThreshold;
+    htArguments["keyframeInterval"] = keyframeInterval;
+    return _eventChannel
+        .receiveBroadcastStream(htArguments)
+        .map((dynamic event) => WifiScanDelta.fromMap(event));
+  }
+
+  @Deprecated(
+      "This is discontinued, switch to new `wifi_scan` plugin by WiFiFlutter. "
+      "Check - https://pub.dev/packages/wifi_scan")
+  static Future<List<WifiNetwork>>? _loadWifiList(bool typedPayload,
+      [WifiScanFilter? filter, Set<String>? fields]) async {
+    final Map<String, dynamic> htArguments = Map();
+    htArguments["typed"] = typedPayload;
+    htArguments["filter"] = filter?.toMap();
+    htArguments["fields"] = fields?.toList();
+    dynamic result;
     List<WifiNetwork> htResult = <WifiNetwork>[];
     try {
-      sResult = await _channel.invokeMethod('loadWifiList', htArguments);
-      htResult = WifiNetwork.parse(sResult!);
+      result = await _channel.invokeMethod('loadWifiList', htArguments);
+      htResult = WifiNetwork.parseAny(result);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+    return htResult;
+  }
+
+  /// Returns the [k] strongest networks of the last scan results, strongest
+  /// first. Android only.
+  ///
+  /// The selection is done natively, only the selected networks are sent.
+  ///
+  /// @param [groupBy] With [NetworkGroupBy.SSID], only the strongest BSSID
+  ///   of each SSID is returned.
+  /// @param [filter] Only results matching it are candidates.
+  /// @param [fields] Keys of [WifiNetwork.toJson] to send, all by default.
+  @Deprecated(
+      "This is discontinued, switch to new `wifi_scan` plugin by WiFiFlutter. "
+      "Check - https://pub.dev/packages/wifi_scan")
+  static Future<List<WifiNetwork>> loadTopNetworks(int k,
+      {NetworkGroupBy groupBy = NetworkGroupBy.BSSID,
+      WifiScanFilter? filter,
+      Set<String>? fields}) async {
+    final Map<String, dynamic> htArguments = Map();
+    htArguments["k"] = k;
+    htArguments["groupBy"] = serializeNetworkGroupByMap[groupBy];
+    htArguments["filter"] = filter?.toMap();
+    htArguments["fields"] = fields?.toList();
+    try {
+      final dynamic result =
+          await _channel.invokeMethod('loadTopNetworks', htArguments);
+      return WifiNetwork.parseAny(result);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+    return <WifiNetwork>[];
+  }
+
+  /// Returns the last scan results in a columnar layout, without starting a
+  /// scan. Android only.
+  ///
+  /// Each field is a typed data view over the platform message, so this is
+  /// the cheapest way to poll scan results frequently. Returns null if the
+  /// results are not available.
+  static Future<WifiScanColumns?> loadWifiColumns() async {
+    final ByteData? data = await _scanColumnsChannel.send(ByteData(0));
+    if (data == null) return null;
+    return WifiScanColumns.fromByteData(data);
+  }
+
+  /// Requests a scan and returns the scan results, telling whether they are
+  /// newer than the request. Android only.
+  ///
+  /// Android lets apps start 4 scans every 2 minutes, further scans silently
+  /// do nothing. Scans are therefore only started within that budget, and a
+  /// request made while a scan is in progress joins it. When no scan can be
+  /// started the last results are returned, with
+  /// [WifiScanResults.throttled] set.
+  ///
+  /// @param [wait] Whether to wait for the results of the scan, up to
+  ///   [timeout] milliseconds, instead of returning the last results
+  ///   immediately.
+  /// @param [filter] Only results matching it are sent, filtered natively.
+  /// @param [fields] Keys of [WifiNetwork.toJson] to send, all by default;
+  ///   the other fields are left null.
+  static Future<WifiScanResults?> scanWifiList(
+      {bool wait = false,
+      int timeout = 10000,
+      WifiScanFilter? filter,
+      Set<String>? fields}) async {
+    final Map<String, dynamic> htArguments = Map();
+    htArguments["wait"] = wait;
+    htArguments["timeout"] = timeout;
+    htArguments["filter"] = filter?.toMap();
+    htArguments["fields"] = fields?.toList();
+    try {
+      final Map<dynamic, dynamic>? result =
+          await _channel.invokeMethod('scanWifiList', htArguments);
+      if (result != null) return WifiScanResults.fromMap(result);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+    return null;
+  }
+
+  /// Returns how many scans were requested through [scanWifiList],
+  /// [loadWifiList], [loadTopNetworks] and [findAndConnect] (`requests`), how
+  /// many started a scan (`started`), joined a scan in progress (`joined`)
+  /// or were served from the last results because of the scan throttling
+  /// (`throttled`). Android only.
+  static Future<Map<String, int>> getScanSchedulerStats() async {
+    final Map<String, String> htArguments = Map();
+    Map<String, int> htResult = <String, int>{};
+    try {
+      final Map<dynamic, dynamic>? result =
+          await _channel.invokeMethod('getScanSchedulerStats', htArguments);
+      if (result != null) htResult = Map<String, int>.from(result);
     } on MissingPluginException catch (e) {
       print("MissingPluginException : ${e.toString()}");
     }
     return htResult;
   }
 
+  /// Returns the last scan results, waiting for a scan if there are none.
+  ///
+  /// @param [typedPayload] If true, results are sent as lists of maps encoded
+  ///   natively by the platform channel, instead of a JSON string that has to
+  ///   be parsed again. Faster for long result lists.
+  /// @param [filter] Only results matching it are sent, filtered natively.
+  /// @param [fields] Keys of [WifiNetwork.toJson] to send, all by default;
+  ///   the other fields are left null.
   @Deprecated(
       "This is discontinued, switch to new `wifi_scan` plugin by WiFiFlutter. "
       "Check - https://pub.dev/packages/wifi_scan")
-  static Future<List<WifiNetwork>> loadWifiList() async {
-    final List<WifiNetwork> result = (await _loadWifiList() ?? <WifiNetwork>[]);
+  static Future<List<WifiNetwork>> loadWifiList(
+      {bool typedPayload = false,
+      WifiScanFilter? filter,
+      Set<String>? fields}) async {
+    final List<WifiNetwork> result =
+        (await _loadWifiList(typedPayload, filter, fields) ?? <WifiNetwork>[]);
     if (result.length >= 1) return result;
 
     result.clear();
+    if (typedPayload || filter != null || fields != null) {
+      return await WiFiForIoTPlugin.scanResultStream(
+              typedPayload: typedPayload, filter: filter, fields: fields)
+          .first;
+    }
     return await WiFiForIoTPlugin.onWifiScanResultReady.first;
   }
 
@@ -621,6 +1010,32 @@ class WiFiForIoTPlugin {
     }
   }
 
+  /// Registers several networks with one call, see [registerWifiNetwork].
+  /// Android only.
+  ///
+  /// On Android 11 and up, all valid networks are shown in a single system
+  /// dialog, which accepts at most 5 networks; the others fail.
+  ///
+  /// @returns One status per network, in order.
+  static Future<List<WifiNetworkStatus>> registerWifiNetworks(
+      List<WifiNetworkRegistration> networks) async {
+    if (!await isEnabled()) await setEnabled(true);
+    try {
+      final List<dynamic>? result =
+          await _channel.invokeMethod('registerWifiNetworks', {
+        "networks": networks
+            .map((WifiNetworkRegistration network) => network.toMap())
+            .toList(),
+      });
+      return WifiNetworkStatus._parseList(result);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    } on PlatformException catch (e) {
+      print(e.message);
+    }
+    return <WifiNetworkStatus>[];
+  }
+
   /// Register a network with the system in the device's wireless networks.
   /// Android only.
   ///
@@ -716,6 +1131,20 @@ class WiFiForIoTPlugin {
   /// @param [withInternet] Whether the connected network has internet access.
   ///   Android only.
   ///
+  /// @param [scanTimeoutInSeconds] If greater than 0, scans until the network
+  ///   shows up, for at most this many seconds and [maxScans] scans, and
+  ///   connects as soon as it is seen, with the security it advertises.
+  ///   Fails with [WiFiConnectionError.NETWORK_NOT_FOUND] if it is not seen.
+  ///   If 0, only the last scan results are looked at, older ones too when
+  ///   the recent ones lack the network. If it is not among them either, this
+  ///   fails with [WiFiConnectionError.NETWORK_NOT_FOUND] when a [password]
+  ///   is given, and connects without security otherwise. Android only.
+  ///
+  /// @param [maxScans] Maximum number of scans started when
+  ///   [scanTimeoutInSeconds] is greater than 0. Android throttles apps to a
+  ///   few scans every two minutes, throttled scans still wait for the
+  ///   results of scans started by others. Android only.
+  ///
   /// @returns True in case the requested network could be connected to, false
   ///   otherwise.
   static Future<bool> findAndConnect(
@@ -725,6 +1154,8 @@ class WiFiForIoTPlugin {
     bool joinOnce = true,
     bool withInternet = false,
     int timeoutInSeconds = 30,
+    int scanTimeoutInSeconds = 0,
+    int maxScans = 4,
   }) async {
     final result = await findAndConnectWithResult(
       ssid,
@@ -733,6 +1164,8 @@ class WiFiForIoTPlugin {
       joinOnce: joinOnce,
       withInternet: withInternet,
       timeoutInSeconds: timeoutInSeconds,
+      scanTimeoutInSeconds: scanTimeoutInSeconds,
+      maxScans: maxScans,
     );
     return result.success;
   }
@@ -769,6 +1202,20 @@ class WiFiForIoTPlugin {
   /// @param [withInternet] Whether the connected network has internet access.
   ///   Android only.
   ///
+  /// @param [scanTimeoutInSeconds] If greater than 0, scans until the network
+  ///   shows up, for at most this many seconds and [maxScans] scans, and
+  ///   connects as soon as it is seen, with the security it advertises.
+  ///   Fails with [WiFiConnectionError.NETWORK_NOT_FOUND] if it is not seen.
+  ///   If 0, only the last scan results are looked at, older ones too when
+  ///   the recent ones lack the network. If it is not among them either, this
+  ///   fails with [WiFiConnectionError.NETWORK_NOT_FOUND] when a [password]
+  ///   is given, and connects without security otherwise. Android only.
+  ///
+  /// @param [maxScans] Maximum number of scans started when
+  ///   [scanTimeoutInSeconds] is greater than 0. Android throttles apps to a
+  ///   few scans every two minutes, throttled scans still wait for the
+  ///   results of scans started by others. Android only.
+  ///
   /// @returns [WiFiConnectionResult] containing success status and error details.
   static Future<WiFiConnectionResult> findAndConnectWithResult(
     String ssid, {
@@ -777,6 +1224,8 @@ class WiFiForIoTPlugin {
     bool joinOnce = true,
     bool withInternet = false,
     int timeoutInSeconds = 30,
+    int scanTimeoutInSeconds = 0,
+    int maxScans = 4,
   }) async {
     // https://en.wikipedia.org/wiki/Service_set_(802.11_network)
     // According to IEEE Std 802.11, a SSID must be between 0 and 32 bytes
@@ -813,6 +1262,8 @@ class WiFiForIoTPlugin {
         "join_once": joinOnce,
         "with_internet": withInternet,
         "timeout_in_seconds": timeoutInSeconds,
+        "scan_timeout_in_seconds": scanTimeoutInSeconds,
+        "max_scans": maxScans,
       });
 
       if (bResult == true) {
@@ -841,6 +1292,92 @@ class WiFiForIoTPlugin {
     }
   }
 
+  /// Connects to the best access point among several candidate networks.
+  /// Android only.
+  ///
+  /// Every BSSID of the candidates in the recent scan results is scored by
+  /// signal strength, band, security and recent connect failures, see
+  /// [WifiConnectPolicy]. The best one is connected to. When it turns out
+  /// unavailable or is lost while connecting, the next best one is tried,
+  /// until [WifiConnectPolicy.maxAttempts] were tried or [timeoutInSeconds]
+  /// passed. Each attempt gets an equal share of the remaining time. When the
+  /// user dismisses the system connection dialog, no other BSSID is tried.
+  ///
+  /// With [withInternet], a network suggestion is added for the best BSSID
+  /// only: the system connects to suggestions on its own schedule, so there
+  /// is nothing to fall through from.
+  ///
+  /// @returns [WifiBestConnectionResult] with the network connected to, or
+  ///   the error of the last attempt;
+  ///   [WiFiConnectionError.NETWORK_NOT_FOUND] if no candidate was seen.
+  static Future<WifiBestConnectionResult> findAndConnectBest(
+    List<WifiConnectCandidate> candidates, {
+    WifiConnectPolicy policy = const WifiConnectPolicy(),
+    bool joinOnce = true,
+    bool withInternet = false,
+    int timeoutInSeconds = 30,
+  }) async {
+    if (!await isEnabled()) await setEnabled(true);
+    try {
+      final Map<dynamic, dynamic>? result =
+          await _channel.invokeMethod('findAndConnectBest', {
+        "candidates": candidates
+            .map((WifiConnectCandidate candidate) => candidate.toMap())
+            .toList(),
+        "policy": policy.toMap(),
+        "join_once": joinOnce,
+        "with_internet": withInternet,
+        "timeout_in_seconds": timeoutInSeconds,
+      });
+      if (result != null) {
+        return WifiBestConnectionResult._(WiFiConnectionResult.success(),
+            WifiBestConnection.fromMap(result));
+      }
+    } on PlatformException catch (e) {
+      return WifiBestConnectionResult._(
+          WiFiConnectionResult.fromPlatformException(e), null);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+    return WifiBestConnectionResult._(
+        WiFiConnectionResult.failure(
+          errorCode: WiFiConnectionError.UNKNOWN_ERROR,
+          errorMessage: "Platform returned no network",
+        ),
+        null);
+  }
+
+  /// Returns whether [ssid] is in the recent scan results, at [bssid] if
+  /// given. Android only; needs the location permission to see any network.
+  ///
+  /// Does not start a scan. Results older than the max age set with
+  /// [setScanIndexMaxAge] are not considered.
+  static Future<bool> isSSIDInRange(String ssid, {String? bssid}) async {
+    final Map<String, String?> htArguments = Map();
+    htArguments["ssid"] = ssid;
+    htArguments["bssid"] = bssid;
+    bool? bResult;
+    try {
+      bResult = await _channel.invokeMethod('isSSIDInRange', htArguments);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+    return bResult ?? false;
+  }
+
+  /// Sets after how many milliseconds a network that was not seen again by a
+  /// scan is no longer considered by [findAndConnect] and [isSSIDInRange];
+  /// 0 restores the default of 2 minutes. Android only.
+  static Future<void> setScanIndexMaxAge(int maxAge) async {
+    final Map<String, int> htArguments = Map();
+    htArguments["maxAge"] = maxAge;
+    try {
+      await _channel.invokeMethod('setScanIndexMaxAge', htArguments);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+  }
+
   /// Returns whether the device is connected to a Wi-Fi network.
   /// Note that this does not necessarily mean that the network is accessible.
   ///
@@ -871,6 +1408,100 @@ class WiFiForIoTPlugin {
     return bResult ?? false;
   }
 
+  /// Configures the plugin diagnostics, arguments left out are not changed.
+  /// Android only.
+  ///
+  /// @param [level] Minimum level logged by the plugin, [DiagnosticsLevel.INFO]
+  ///   by default.
+  ///
+  /// @param [eventCapacity] How many connect events are kept for
+  ///   [getConnectEvents], the oldest ones are dropped first; 0, the default,
+  ///   disables recording. Changing it drops the events recorded so far.
+  static Future<void> setDiagnostics(
+      {DiagnosticsLevel? level, int? eventCapacity}) async {
+    final Map<String, int?> htArguments = Map();
+    htArguments["level"] = serializeDiagnosticsLevelMap[level];
+    htArguments["eventCapacity"] = eventCapacity;
+    try {
+      await _channel.invokeMethod('setDiagnostics', htArguments);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+  }
+
+  /// Returns the recorded connect events, oldest first. Android only.
+  ///
+  /// @param [clear] Whether to remove the returned events.
+  static Future<List<WifiConnectEvent>> getConnectEvents(
+      {bool clear = false}) async {
+    final Map<String, bool> htArguments = Map();
+    htArguments["clear"] = clear;
+    List<WifiConnectEvent> htResult = <WifiConnectEvent>[];
+    try {
+      final List<dynamic>? result =
+          await _channel.invokeMethod('getConnectEvents', htArguments);
+      if (result != null) {
+        htResult = result
+            .map((dynamic event) => WifiConnectEvent.fromMap(event))
+            .toList();
+      }
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+    return htResult;
+  }
+
+  /// Sets for how many milliseconds the result of `getSSID`, `getBSSID`,
+  /// `getCurrentSignalStrength`, `getFrequency`, `getIP`, `isConnected` and
+  /// `loadWifiList` is reused by identical calls. Android only.
+  ///
+  /// Identical calls made while one is in progress always share its result;
+  /// with 0, the default, results are not reused after that.
+  static Future<void> setReadCoalescingWindow(int window) async {
+    final Map<String, int> htArguments = Map();
+    htArguments["window"] = window;
+    try {
+      await _channel.invokeMethod('setReadCoalescing', htArguments);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+  }
+
+  /// Returns how many read calls were made (`calls`), how many actually
+  /// reached the system (`executed`), and how many shared a read in progress
+  /// (`joined`) or a recent result (`cached`). Android only.
+  static Future<Map<String, int>> getReadCoalescingStats() async {
+    final Map<String, String> htArguments = Map();
+    Map<String, int> htResult = <String, int>{};
+    try {
+      final Map<dynamic, dynamic>? result =
+          await _channel.invokeMethod('getReadCoalescingStats', htArguments);
+      if (result != null) htResult = Map<String, int>.from(result);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+    return htResult;
+  }
+
+  /// Returns the current connection details read at once. Android only.
+  ///
+  /// @param [window] Calls within this many milliseconds of the previous read
+  ///   of the connection details get the same result instead of reading them
+  ///   again; 0 always reads them again.
+  static Future<WifiConnectionSnapshot?> getConnectionSnapshot(
+      {int window = 500}) async {
+    final Map<String, int> htArguments = Map();
+    htArguments["window"] = window;
+    try {
+      final Map<dynamic, dynamic>? result =
+          await _channel.invokeMethod('getConnectionSnapshot', htArguments);
+      if (result != null) return WifiConnectionSnapshot.fromMap(result);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    }
+    return null;
+  }
+
   static Future<String?> getSSID() async {
     final Map<String, String> htArguments = Map();
     String? sResult;
@@ -942,6 +1573,26 @@ class WiFiForIoTPlugin {
     return bResult != null && bResult;
   }
 
+  /// Removes the networks whose SSID starts with each of [ssids], as
+  /// [removeWifiNetwork] does, with one call. Android only.
+  ///
+  /// @returns One status per prefix, in order.
+  static Future<List<WifiNetworkStatus>> removeWifiNetworks(
+      List<String> ssids) async {
+    final Map<String, dynamic> htArguments = Map();
+    htArguments["ssids"] = ssids;
+    try {
+      final List<dynamic>? result =
+          await _channel.invokeMethod('removeWifiNetworks', htArguments);
+      return WifiNetworkStatus._parseList(result);
+    } on MissingPluginException catch (e) {
+      print("MissingPluginException : ${e.toString()}");
+    } on PlatformException catch (e) {
+      print(e.message);
+    }
+    return <WifiNetworkStatus>[];
+  }
+
   static Future<bool> isRegisteredWifiNetwork(String ssid) async {
     final Map<String, String> htArguments = Map();
     htArguments["ssid"] = ssid;
@@ -956,6 +1607,142 @@ class WiFiForIoTPlugin {
   }
 }
 
+/// A network to register, see [WiFiForIoTPlugin.registerWifiNetworks].
+class WifiNetworkRegistration {
+  final String ssid;
+  final String? bssid;
+  final String? password;
+  final NetworkSecurity security;
+  final bool isHidden;
+
+  const WifiNetworkRegistration(this.ssid,
+      {this.bssid,
+      this.password,
+      this.security = NetworkSecurity.NONE,
+      this.isHidden = false});
+
+  Map<String, dynamic> toMap() => {
+        "ssid": ssid,
+        "bssid": bssid,
+        "password": password,
+        "security": serializeNetworkSecurityMap[security],
+        "is_hidden": isHidden,
+      };
+}
+
+/// A network [WiFiForIoTPlugin.findAndConnectBest] may connect to.
+class WifiConnectCandidate {
+  /// SSID of the network, or the start of it if [prefix] is true
+  final String ssid;
+
+  final bool prefix;
+
+  /// WPA/WPA3 passphrase, null for open networks
+  final String? password;
+
+  const WifiConnectCandidate(this.ssid, {this.password, this.prefix = false});
+
+  Map<String, dynamic> toMap() => {
+        "ssid": ssid,
+        "prefix": prefix,
+        "password": password,
+      };
+}
+
+/// How [WiFiForIoTPlugin.findAndConnectBest] scores access points. The
+/// score is the signal level in dBm, plus the bonuses that apply, minus
+/// [failurePenalty] per connect failure of the BSSID in the last
+/// [failureMemory] milliseconds. Enterprise (EAP) networks are never tried.
+class WifiConnectPolicy {
+  /// Access points below this level, in dBm, are not tried
+  final int minLevel;
+
+  /// Added to access points on the 5 and 6 GHz bands
+  final int bandBonus;
+
+  /// Added to WPA3 and OWE access points
+  final int securityBonus;
+
+  final int failurePenalty;
+
+  final int failureMemory;
+
+  /// Maximum number of access points tried
+  final int maxAttempts;
+
+  const WifiConnectPolicy(
+      {this.minLevel = -90,
+      this.bandBonus = 10,
+      this.securityBonus = 0,
+      this.failurePenalty = 20,
+      this.failureMemory = 300000,
+      this.maxAttempts = 3});
+
+  Map<String, int> toMap() => {
+        "minLevel": minLevel,
+        "bandBonus": bandBonus,
+        "securityBonus": securityBonus,
+        "failurePenalty": failurePenalty,
+        "failureMemory": failureMemory,
+        "maxAttempts": maxAttempts,
+      };
+}
+
+/// The access point [WiFiForIoTPlugin.findAndConnectBest] connected to.
+class WifiBestConnection {
+  final String ssid;
+  final String? bssid;
+
+  /// Signal strength in dBm, as of the scan
+  final int level;
+
+  /// Frequency in MHz
+  final int frequency;
+
+  /// Score it won with, see [WifiConnectPolicy]
+  final int score;
+
+  /// Number of access points tried, this one included
+  final int attempts;
+
+  WifiBestConnection.fromMap(Map<dynamic, dynamic> map)
+      : ssid = map['ssid'],
+        bssid = map['bssid'],
+        level = map['level'],
+        frequency = map['frequency'],
+        score = map['score'],
+        attempts = map['attempts'];
+}
+
+class WifiBestConnectionResult {
+  final WiFiConnectionResult result;
+
+  /// Null unless [result] is successful
+  final WifiBestConnection? connection;
+
+  const WifiBestConnectionResult._(this.result, this.connection);
+}
+
+/// Outcome for one network of a batch operation.
+class WifiNetworkStatus {
+  final String ssid;
+  final bool success;
+
+  /// Why the operation failed, when known
+  final String? error;
+
+  WifiNetworkStatus.fromMap(Map<dynamic, dynamic> map)
+      : ssid = map['ssid'],
+        success = map['success'],
+        error = map['error'];
+
+  static List<WifiNetworkStatus> _parseList(List<dynamic>? list) {
+    return (list ?? <dynamic>[])
+        .map((dynamic status) => WifiNetworkStatus.fromMap(status))
+        .toList();
+  }
+}
+
 class APClient {
   /// Returns the IP Address
   String? ipAddr;
@@ -995,6 +1782,284 @@ class APClient {
   }
 }
 
+/// Scan results stored column by column, as sent by the platform.
+///
+/// Every column is a view over the platform message, the results are only
+/// decoded when read.
+class WifiScanColumns {
+  /// Layout version understood by this class.
+  static const int version = 1;
+
+  /// Number of results
+  final int length;
+
+  /// BSSIDs as 48 bit integers, -1 if missing
+  final Int64List bssids;
+
+  final Int64List timestamps;
+  final Int32List frequencies;
+  final Int32List levels;
+
+  final Int32List _ssidOffsets;
+  final Int32List _capabilitiesOffsets;
+  final Uint8List _ssidBytes;
+  final Uint8List _capabilitiesBytes;
+
+  WifiScanColumns._(
+      this.length,
+      this.bssids,
+      this.timestamps,
+      this.frequencies,
+      this.levels,
+      this._ssidOffsets,
+      this._capabilitiesOffsets,
+      this._ssidBytes,
+      this._capabilitiesBytes);
+
+  factory WifiScanColumns.fromByteData(ByteData data) {
+    // typed views need the 64 bit columns to be aligned
+    if (data.offsetInBytes % 8 != 0) {
+      data = ByteData.sublistView(Uint8List.fromList(
+          data.buffer.asUint8List(data.offsetInBytes, data.lengthInBytes)));
+    }
+    final int layoutVersion = data.getInt32(0, Endian.host);
+    if (layoutVersion != version) {
+      throw UnsupportedError("Unsupported scan columns version $layoutVersion");
+    }
+    final int n = data.getInt32(4, Endian.host);
+    final int ssidLength = data.getInt32(8, Endian.host);
+    final int capabilitiesLength = data.getInt32(12, Endian.host);
+
+    final ByteBuffer buffer = data.buffer;
+    int offset = data.offsetInBytes + 16;
+    final Int64List bssids = buffer.asInt64List(offset, n);
+    offset += n * 8;
+    final Int64List timestamps = buffer.asInt64List(offset, n);
+    offset += n * 8;
+    final Int32List frequencies = buffer.asInt32List(offset, n);
+    offset += n * 4;
+    final Int32List levels = buffer.asInt32List(offset, n);
+    offset += n * 4;
+    final Int32List ssidOffsets = buffer.asInt32List(offset, n + 1);
+    offset += (n + 1) * 4;
+    final Int32List capabilitiesOffsets = buffer.asInt32List(offset, n + 1);
+    offset += (n + 1) * 4;
+    final Uint8List ssidBytes = buffer.asUint8List(offset, ssidLength);
+    offset += ssidLength;
+    final Uint8List capabilitiesBytes =
+        buffer.asUint8List(offset, capabilitiesLength);
+
+    return WifiScanColumns._(n, bssids, timestamps, frequencies, levels,
+        ssidOffsets, capabilitiesOffsets, ssidBytes, capabilitiesBytes);
+  }
+
+  String ssid(int index) => utf8.decode(Uint8List.sublistView(
+      _ssidBytes, _ssidOffsets[index], _ssidOffsets[index + 1]));
+
+  String capabilities(int index) => utf8.decode(Uint8List.sublistView(
+      _capabilitiesBytes,
+      _capabilitiesOffsets[index],
+      _capabilitiesOffsets[index + 1]));
+
+  /// BSSID formatted as "aa:bb:cc:dd:ee:ff", null if missing
+  String? bssid(int index) {
+    final int value = bssids[index];
+    if (value < 0) return null;
+    return List<String>.generate(
+            6,
+            (int k) =>
+                ((value >> (40 - 8 * k)) & 0xff).toRadixString(16).padLeft(2, '0'))
+        .join(':');
+  }
+}
+
+/// Scan result filter, applied natively before the results are sent.
+///
+/// Every criterion that is set must match; lists match any of their values.
+class WifiScanFilter {
+  /// SSID must start with this prefix
+  final String? ssidPrefix;
+
+  /// Regular expression (Java syntax) the whole SSID must match
+  final String? ssidPattern;
+
+  /// BSSIDs to keep, case insensitive
+  final Set<String>? bssids;
+
+  /// Minimum level, in dBm
+  final int? minLevel;
+
+  /// Frequency bands to keep, among "2.4GHz", "5GHz" and "6GHz"
+  final Set<String>? bands;
+
+  /// Security classes to keep, among "open", "wep", "wpa", "wpa2", "wpa3"
+  /// and "eap"
+  final Set<String>? security;
+
+  const WifiScanFilter(
+      {this.ssidPrefix,
+      this.ssidPattern,
+      this.bssids,
+      this.minLevel,
+      this.bands,
+      this.security});
+
+  Map<String, dynamic> toMap() => {
+        'ssidPrefix': ssidPrefix,
+        'ssidPattern': ssidPattern,
+        'bssids': bssids?.toList(),
+        'minLevel': minLevel,
+        'bands': bands?.toList(),
+        'security': security?.toList(),
+      };
+}
+
+/// Changes of the scan results since the previous event, see
+/// [WiFiForIoTPlugin.scanResultDeltaStream].
+class WifiScanDelta {
+  /// Whether this event holds every network, in [added]
+  final bool isKeyframe;
+
+  /// Networks seen for the first time, or every network for a keyframe
+  final List<WifiNetwork> added;
+
+  /// Networks whose level, frequency, SSID or capabilities changed
+  final List<WifiNetwork> changed;
+
+  /// BSSIDs of the networks no longer in the scan results
+  final List<String> removed;
+
+  WifiScanDelta.fromMap(Map<dynamic, dynamic> map)
+      : isKeyframe = map['type'] == 'keyframe',
+        added = WifiNetwork.parseAny(
+            map['type'] == 'keyframe' ? map['networks'] : map['added']),
+        changed = WifiNetwork.parseAny(map['changed']),
+        removed = List<String>.from(map['removed'] ?? <dynamic>[]);
+
+  /// Applies this event to [networks], keyed by BSSID.
+  void apply(Map<String, WifiNetwork> networks) {
+    if (isKeyframe) networks.clear();
+    removed.forEach(networks.remove);
+    for (final WifiNetwork network in added.followedBy(changed)) {
+      networks[network.bssid!] = network;
+    }
+  }
+}
+
+/// Details of the current WiFi connection, see
+/// [WiFiForIoTPlugin.getConnectionSnapshot].
+/// Scan results returned by [WiFiForIoTPlugin.scanWifiList]
+class WifiScanResults {
+  final List<WifiNetwork> networks;
+
+  /// Whether a scan completed since the request, so that [networks] are
+  /// newer than it
+  final bool fresh;
+
+  /// Milliseconds since the newest of [networks] was seen, -1 if unknown
+  final int age;
+
+  /// Whether the request started a scan, rather than joining one in progress
+  final bool scanStarted;
+
+  /// Whether no scan could be started nor joined because of the scan
+  /// throttling, [networks] are then the last results
+  final bool throttled;
+
+  WifiScanResults.fromMap(Map<dynamic, dynamic> map)
+      : networks = WifiNetwork.parseAny(map['networks']),
+        fresh = map['fresh'],
+        age = map['age'],
+        scanStarted = map['scanStarted'],
+        throttled = map['throttled'];
+}
+
+class WifiConnectionSnapshot {
+  /// SSID, without quotes
+  final String? ssid;
+
+  /// BSSID, upper case
+  final String? bssid;
+
+  /// Signal strength in dBm
+  final int rssi;
+
+  /// Link speed in Mbps
+  final int linkSpeed;
+
+  /// Frequency in MHz
+  final int frequency;
+
+  final String ip;
+
+  /// Network id of the configured network, -1 if none
+  final int networkId;
+
+  /// Name of the Android `SupplicantState`, e.g. "COMPLETED"
+  final String supplicantState;
+
+  /// Milliseconds since these details were read
+  final int age;
+
+  WifiConnectionSnapshot.fromMap(Map<dynamic, dynamic> map)
+      : ssid = map['ssid'],
+        bssid = map['bssid'],
+        rssi = map['rssi'],
+        linkSpeed = map['linkSpeed'],
+        frequency = map['frequency'],
+        ip = map['ip'],
+        networkId = map['networkId'],
+        supplicantState = map['supplicantState'],
+        age = map['age'];
+}
+
+/// One step of a connect attempt, see [WiFiForIoTPlugin.getConnectEvents]
+class WifiConnectEvent {
+  /// Milliseconds since epoch
+  final int time;
+
+  /// What happened, e.g. "start", "found", "notFound", "request",
+  /// "available", "unavailable" or "lost"
+  final String type;
+
+  final String? ssid;
+
+  final String? bssid;
+
+  /// Event specific details, e.g. the capabilities of a found network
+  final String? detail;
+
+  WifiConnectEvent.fromMap(Map<dynamic, dynamic> map)
+      : time = map['time'],
+        type = map['type'],
+        ssid = map['ssid'],
+        bssid = map['bssid'],
+        detail = map['detail'];
+}
+
+class APClientChanges {
+  /// Clients seen for the first time, or reachable again
+  final List<APClient> joined;
+
+  /// Clients gone from the ARP table, or no longer reachable
+  final List<APClient> left;
+
+  /// Clients whose IP address, device or reachability changed
+  final List<APClient> changed;
+
+  APClientChanges.fromMap(Map<dynamic, dynamic> map)
+      : joined = _parseClients(map['joined']),
+        left = _parseClients(map['left']),
+        changed = _parseClients(map['changed']);
+
+  static List<APClient> _parseClients(List<dynamic>? clients) {
+    return (clients ?? <dynamic>[])
+        .map((dynamic client) =>
+            APClient.fromJson(Map<String, dynamic>.from(client)))
+        .toList();
+  }
+}
+
 @Deprecated(
     "This is discontinued, switch to new `wifi_scan` plugin by WiFiFlutter. "
     "Check - https://pub.dev/packages/wifi_scan")
@@ -1002,6 +2067,9 @@ class WifiNetwork {
   String? ssid;
   String? bssid;
   String? capabilities;
+
+  /// [WifiCapabilityFlags] bits of [capabilities]. Android only.
+  int? capabilityFlags;
   int? frequency;
   int? level;
   int? timestamp;
@@ -1011,6 +2079,7 @@ class WifiNetwork {
       : ssid = json['SSID'],
         bssid = json['BSSID'],
         capabilities = json['capabilities'],
+        capabilityFlags = json['capabilityFlags'],
         frequency = json['frequency'],
         level = json['level'],
         timestamp = json['timestamp'];
@@ -1019,6 +2088,7 @@ class WifiNetwork {
         'SSID': ssid,
         'BSSID': bssid,
         'capabilities': capabilities,
+        'capabilityFlags': capabilityFlags,
         'frequency': frequency,
         'level': level,
         'timestamp': timestamp,
@@ -1041,4 +2111,18 @@ class WifiNetwork {
     }
     return htList;
   }
+
+  /// Parses either a JSON string, or a typed payload made of a list of maps.
+  static List<WifiNetwork> parseAny(dynamic payload) {
+    if (payload is String) return parse(payload);
+
+    final List<WifiNetwork> htList = <WifiNetwork>[];
+    if (payload is List) {
+      payload.forEach((dynamic htMapNetwork) {
+        htList.add(
+            WifiNetwork.fromJson(Map<String, dynamic>.from(htMapNetwork)));
+      });
+    }
+    return htList;
+  }
 }